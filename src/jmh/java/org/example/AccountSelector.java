@@ -0,0 +1,74 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks accounts for generated transfers, either uniformly or following a Zipf distribution
+ * where the account at rank {@code k} is picked with a probability proportional to {@code 1 / k^exponent},
+ * or with one hot account picked with a fixed probability and the others uniformly.
+ */
+public class AccountSelector {
+
+    private final List<UUID> accounts;
+    private final double[] cumulativeProbabilities;
+
+    private AccountSelector(List<UUID> accounts, double[] cumulativeProbabilities) {
+        this.accounts = accounts;
+        this.cumulativeProbabilities = cumulativeProbabilities;
+    }
+
+    public static AccountSelector uniform(List<UUID> accounts) {
+        return new AccountSelector(accounts, null);
+    }
+
+    public static AccountSelector zipf(List<UUID> accounts, double exponent) {
+        var cumulative = new double[accounts.size()];
+        double sum = 0;
+        for (int rank = 1; rank <= accounts.size(); rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= sum;
+        }
+        return new AccountSelector(accounts, cumulative);
+    }
+
+    public static AccountSelector hot(List<UUID> accounts, double hotShare) {
+        var cumulative = new double[accounts.size()];
+        cumulative[0] = hotShare;
+        for (int i = 1; i < cumulative.length; i++) {
+            cumulative[i] = hotShare + (1 - hotShare) * i / (cumulative.length - 1);
+        }
+        return new AccountSelector(accounts, cumulative);
+    }
+
+    public static AccountSelector of(String distribution, List<UUID> accounts) {
+        return switch (distribution) {
+            case "uniform" -> uniform(accounts);
+            case "zipf" -> zipf(accounts, 1.0);
+            case "hot" -> hot(accounts, 0.5);
+            default -> throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        };
+    }
+
+    public UUID next() {
+        var random = ThreadLocalRandom.current();
+        if (cumulativeProbabilities == null) {
+            return accounts.get(random.nextInt(accounts.size()));
+        }
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return accounts.get(Math.min(index >= 0 ? index : -index - 1, accounts.size() - 1));
+    }
+
+    public UUID nextOtherThan(UUID excluded) {
+        UUID selected;
+        do {
+            selected = next();
+        } while (selected.equals(excluded));
+        return selected;
+    }
+}
@@ -0,0 +1,144 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * Versioned transfers over a shrinking set of accounts, committed three ways:
+ * {@code optimistic} checks versions at commit and retries, {@code locking} always locks both accounts
+ * up front, and {@code adaptive} switches per account above {@code threshold}.
+ * Run with several threads ({@code -PjmhThreads=8}); the account count at which {@code locking} overtakes
+ * {@code optimistic} is the crossover, and {@code 1 - commits / attempts} of the optimistic run
+ * at that point is the conflict rate to configure as {@code unit-of-work.adaptive.conflict-rate-threshold}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AdaptiveLockingBenchmark {
+
+    private static final long AMOUNT = 1L;
+
+    @Param({"2", "8", "32", "128"})
+    private int accounts;
+
+    @Param({"optimistic", "locking", "adaptive"})
+    private String mode;
+
+    @Param({"0.3"})
+    private double threshold;
+
+    private ConfigurableApplicationContext context;
+    private UnitOfWork unitOfWork;
+    private TransactionTemplate transactionTemplate;
+    private RepositoryRegistry repositoryRegistry;
+    private BatchFlusher batchFlusher;
+    private AccountSelector selector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+            "unit-of-work.adaptive.enabled=" + mode.equals("adaptive"),
+            "unit-of-work.adaptive.conflict-rate-threshold=" + threshold
+        );
+        unitOfWork = context.getBean(UnitOfWork.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        repositoryRegistry = context.getBean(RepositoryRegistry.class);
+        batchFlusher = context.getBean(BatchFlusher.class);
+        selector = AccountSelector.uniform(BenchmarkContext.resetAccounts(context, accounts, Long.MAX_VALUE / 4));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Attempts {
+
+        public long attempts;
+        public long commits;
+        public long exhausted;
+
+        RetryPolicy retryPolicy;
+
+        @Setup(Level.Iteration)
+        public void reset(AdaptiveLockingBenchmark benchmark) {
+            attempts = 0;
+            commits = 0;
+            exhausted = 0;
+            retryPolicy = benchmark.unitOfWork.getRetryPolicy().withListener(new RetryListener() {
+                @Override
+                public void onSuccess(int attemptsMade) {
+                    attempts += attemptsMade;
+                    commits++;
+                }
+
+                @Override
+                public void onExhausted(int attemptsMade, OptimisticLockException exception) {
+                    attempts += attemptsMade;
+                    exhausted++;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public Transfer transfer(Attempts counters) {
+        var fromId = selector.next();
+        var toId = selector.nextOtherThan(fromId);
+        var logic = transferLogic(fromId, toId);
+        if (mode.equals("locking")) {
+            counters.attempts++;
+            counters.commits++;
+            return lockAndCommit(List.of(fromId, toId), logic);
+        }
+        try {
+            return unitOfWork.executeRetriable(counters.retryPolicy, Account.class, List.of(fromId, toId), logic);
+        } catch (OptimisticLockException e) {
+            return null;
+        }
+    }
+
+    private Transfer lockAndCommit(List<UUID> ids, Function<Batch, Transfer> logic) {
+        return transactionTemplate.execute(_ -> {
+            var identityMap = new IdentityMap(repositoryRegistry);
+            identityMap.lock(Account.class, ids);
+            var batch = new Batch(identityMap);
+            var transfer = logic.apply(batch);
+            batchFlusher.flush(batch);
+            return transfer;
+        });
+    }
+
+    private static Function<Batch, Transfer> transferLogic(UUID fromId, UUID toId) {
+        return batch -> {
+            var found = batch.findAll(Account.class, List.of(fromId, toId));
+            var from = found.get(fromId);
+            var to = found.get(toId);
+            batch.update(from.withBalance(from.balance() - AMOUNT));
+            batch.update(to.withBalance(to.balance() + AMOUNT));
+            var transfer = new Transfer(randomUUID(), fromId, toId, AMOUNT);
+            batch.insert(transfer);
+            return transfer;
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package org.example;
+
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.Comparator.comparing;
+
+/**
+ * Building a batch of account updates and flushing it into a sink instead of a database. {@code keyed} is
+ * {@link Batch}, which keeps updates sorted by id as they are registered and merges repeated updates of an entity;
+ * {@code list} is the list per type it used before, sorted at flush. With {@code updatesPerAccount} above 1,
+ * every account is updated again, which {@code list} flushes as extra updates that are sure to fail.
+ * The GC profiler gives the allocations of each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchBenchmark {
+
+    @Param({"2", "16", "128", "1024"})
+    private int size;
+
+    @Param({"1", "2"})
+    private int updatesPerAccount;
+
+    @Param({"keyed", "list"})
+    private String batch;
+
+    private List<Account> accounts;
+    private Sink sink;
+    private RepositoryRegistry repositoryRegistry;
+    private IdentityMap identityMap;
+
+    @Setup
+    public void setUp() {
+        // Registered in random id order, as transfers between random accounts would
+        accounts = IntStream.range(0, size)
+            .mapToObj(_ -> new Account(UUID.randomUUID(), 1_000L, 0L))
+            .toList();
+        sink = new Sink();
+        repositoryRegistry = sinkRegistry(sink);
+        identityMap = new IdentityMap(repositoryRegistry);
+    }
+
+    @Benchmark
+    public Object build() {
+        return batch.equals("keyed") ? buildKeyed() : buildList();
+    }
+
+    @Benchmark
+    public long buildAndFlush() {
+        if (batch.equals("keyed")) {
+            buildKeyed().executeUpdates(repositoryRegistry);
+        } else {
+            flushList(buildList());
+        }
+        return sink.flushed;
+    }
+
+    private Batch buildKeyed() {
+        var keyed = new Batch(identityMap);
+        for (int i = 0; i < updatesPerAccount; i++) {
+            for (var account : accounts) {
+                keyed.update(account.withBalance(account.balance() + i));
+            }
+        }
+        return keyed;
+    }
+
+    // The pending updates as Batch kept them before they were keyed by id
+    private Map<Class<?>, List<Entity>> buildList() {
+        Map<Class<?>, List<Entity>> toUpdate = new TreeMap<>(comparing(Class::getName));
+        for (int i = 0; i < updatesPerAccount; i++) {
+            for (var account : accounts) {
+                toUpdate.computeIfAbsent(Account.class, _ -> new ArrayList<>())
+                    .add(account.withBalance(account.balance() + i));
+            }
+        }
+        return toUpdate;
+    }
+
+    private void flushList(Map<Class<?>, List<Entity>> toUpdate) {
+        toUpdate.forEach((type, entities) -> {
+            entities.sort(comparing(Entity::getId));
+            repositoryRegistry.<Entity>getRepository(type).updateAll(entities);
+        });
+    }
+
+    /**
+     * Counts flushed entities in place of a database.
+     */
+    static class Sink {
+        long flushed;
+    }
+
+    /**
+     * A registry whose repositories hand every flushed group to the sink instead of a database.
+     */
+    static RepositoryRegistry sinkRegistry(Sink sink) {
+        var dsl = DSL.using(SQLDialect.POSTGRES);
+        var transferProperties = new TransferProperties(
+            TransferProperties.BalanceUpdateMode.VERSIONED,
+            new TransferProperties.Bulk(1_000, 5_000),
+            new TransferProperties.Partitions(3),
+            new TransferProperties.Ledger(Duration.ofSeconds(1)),
+            new TransferProperties.Idempotency(1_000, Duration.ofHours(24), Duration.ofHours(1))
+        );
+        var accountCache = new AccountCache(
+            new AccountProperties(new AccountProperties.Cache(false, 1, Duration.ofSeconds(5))),
+            transferProperties,
+            new ReplicaProperties(
+                false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(1), ReplicaProperties.LagFallback.PRIMARY
+            )
+        );
+        var accountRepository = new AccountRepository(dsl, accountCache, transferProperties) {
+            @Override
+            public void updateAll(List<Account> entities) {
+                sink.flushed += entities.size();
+            }
+        };
+        var transferRepository = new TransferRepository(dsl) {
+            @Override
+            public void saveAll(List<Transfer> entities) {
+                sink.flushed += entities.size();
+            }
+        };
+        return new RepositoryRegistry(
+            accountRepository,
+            transferRepository,
+            new LedgerRepository(dsl),
+            new IdempotencyKeyRepository(dsl),
+            transferProperties
+        );
+    }
+}
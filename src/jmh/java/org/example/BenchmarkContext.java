@@ -0,0 +1,59 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+
+/**
+ * Starts the application, without a web server unless asked for, against the database given by
+ * {@code -Dbench.jdbc.url}, or a throwaway PostgreSQL container when it is not set.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return start(WebApplicationType.NONE, properties);
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... properties) {
+        var url = System.getProperty("bench.jdbc.url", "jdbc:tc:postgresql:16:///bench");
+        var args = new ArrayList<>(List.of(
+            "--spring.datasource.url=" + url,
+            "--spring.datasource.username=" + System.getProperty("bench.jdbc.user", "test"),
+            "--spring.datasource.password=" + System.getProperty("bench.jdbc.password", "test"),
+            "--spring.datasource.driver-class-name=" + (url.startsWith("jdbc:tc:")
+                ? "org.testcontainers.jdbc.ContainerDatabaseDriver"
+                : "org.postgresql.Driver"),
+            "--logging.level.root=WARN"
+        ));
+        for (var property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(Application.class)
+            .web(webApplicationType)
+            .run(args.toArray(String[]::new));
+    }
+
+    static List<UUID> resetAccounts(ConfigurableApplicationContext context, int count, long balance) {
+        var dsl = context.getBean(DSLContext.class);
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+
+        var accounts = IntStream.range(0, count)
+            .mapToObj(_ -> new Account(UUID.randomUUID(), balance, 0L))
+            .toList();
+        context.getBean(AccountRepository.class).saveAll(accounts);
+        return accounts.stream().map(Account::id).toList();
+    }
+}
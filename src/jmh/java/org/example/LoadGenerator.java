@@ -0,0 +1,326 @@
+package org.example;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives transfers through {@link TransferService} or {@code POST /transfers} for a fixed duration,
+ * reports throughput, latency percentiles, attempts per commit and retry exhaustion, and fails
+ * if the total balance of all accounts has changed. Configured with {@code load.*} system properties;
+ * run it with {@code ./gradlew loadTest}.
+ * <p>
+ * With a target rate, every transfer has a scheduled start and its latency is measured from there,
+ * so time spent waiting behind slow transfers is counted instead of hidden.
+ */
+public final class LoadGenerator {
+
+    private static final long INITIAL_BALANCE = 1_000_000_000L;
+    private static final long MAX_AMOUNT = 100L;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var settings = Settings.fromSystemProperties();
+        var properties = new ArrayList<>(settings.springProperties());
+        var webApplicationType = WebApplicationType.NONE;
+        if (settings.http()) {
+            properties.add("server.port=0");
+            webApplicationType = WebApplicationType.SERVLET;
+        }
+
+        try (var context = BenchmarkContext.start(webApplicationType, properties.toArray(String[]::new))) {
+            var accounts = BenchmarkContext.resetAccounts(context, settings.accounts(), INITIAL_BALANCE);
+            var selector = settings.skew().equals("hot")
+                ? AccountSelector.hot(accounts, settings.hotShare())
+                : AccountSelector.of(settings.skew(), accounts);
+            var accountRepository = context.getBean(AccountRepository.class);
+            long initialTotal = totalBalance(accountRepository);
+
+            var stats = new Stats(settings.duration());
+            var unitOfWork = context.getBean(UnitOfWork.class);
+            unitOfWork.setRetryPolicy(unitOfWork.getRetryPolicy().withListener(stats));
+
+            System.out.printf("Running %s for %s against %d %s accounts%n",
+                settings, settings.duration(), settings.accounts(), settings.skew());
+            run(settings, transferClient(settings, context), selector, stats);
+            stats.report(settings.duration());
+
+            long finalTotal = totalBalance(accountRepository);
+            System.out.printf("Total balance: %d before, %d after%n", initialTotal, finalTotal);
+            if (finalTotal != initialTotal) {
+                throw new IllegalStateException("Total balance changed by " + (finalTotal - initialTotal));
+            }
+        }
+    }
+
+    private static void run(Settings settings, TransferClient client, AccountSelector selector, Stats stats)
+        throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + settings.duration().toNanos();
+        var pacer = settings.rate() > 0 ? new Pacer(start, settings.rate()) : null;
+
+        var executor = settings.virtualThreads()
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(settings.threads());
+        try (executor) {
+            for (int i = 0; i < settings.threads(); i++) {
+                executor.execute(() -> {
+                    var random = ThreadLocalRandom.current();
+                    while (true) {
+                        long scheduled = pacer == null ? System.nanoTime() : pacer.awaitNextSlot();
+                        if (scheduled >= end) {
+                            return;
+                        }
+                        var from = selector.next();
+                        var to = selector.nextOtherThan(from);
+                        var outcome = client.transfer(from, to, random.nextLong(1, MAX_AMOUNT + 1));
+                        stats.record(outcome, System.nanoTime() - scheduled);
+                    }
+                });
+            }
+            long reportInterval = settings.reportInterval().toNanos();
+            for (long next = start + reportInterval; next < end; next += reportInterval) {
+                TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+                stats.progress(Duration.ofNanos(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private static TransferClient transferClient(Settings settings, ConfigurableApplicationContext context) {
+        if (!settings.http()) {
+            var transferService = context.getBean(TransferService.class);
+            return (from, to, amount) -> {
+                try {
+                    transferService.createTransfer(from, to, amount);
+                    return Outcome.CREATED;
+                } catch (InsufficientFundsException e) {
+                    return Outcome.REJECTED;
+                } catch (OverloadedException | DeadlineExceededException e) {
+                    return Outcome.SHED;
+                } catch (RuntimeException e) {
+                    return Outcome.FAILED;
+                }
+            };
+        }
+
+        var port = context.getEnvironment().getProperty("local.server.port");
+        var uri = URI.create("http://localhost:" + port + "/transfers");
+        var httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        return (from, to, amount) -> {
+            var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"fromAccountId\":\"" + from + "\",\"toAccountId\":\"" + to + "\",\"amount\":" + amount + "}"
+                ))
+                .build();
+            try {
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                return switch (status) {
+                    case 201 -> Outcome.CREATED;
+                    case 422 -> Outcome.REJECTED;
+                    case 503, 504 -> Outcome.SHED;
+                    default -> Outcome.FAILED;
+                };
+            } catch (IOException e) {
+                return Outcome.FAILED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.FAILED;
+            }
+        };
+    }
+
+    private static long totalBalance(AccountRepository accountRepository) {
+        return accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+    }
+
+    enum Outcome {
+        CREATED,
+        /**
+         * Refused for insufficient funds, which only delta and ledger transfers check.
+         */
+        REJECTED,
+        /**
+         * Turned away by the concurrency limiter, or given up at the request deadline.
+         */
+        SHED,
+        FAILED
+    }
+
+    @FunctionalInterface
+    interface TransferClient {
+        Outcome transfer(UUID from, UUID to, long amount);
+    }
+
+    /**
+     * Hands out evenly spaced start times; a worker waits for its slot, or starts right away when behind.
+     */
+    private static final class Pacer {
+
+        private final AtomicLong nextSlot;
+        private final long intervalNanos;
+
+        Pacer(long start, double ratePerSecond) {
+            this.nextSlot = new AtomicLong(start);
+            this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        }
+
+        long awaitNextSlot() {
+            long slot = nextSlot.getAndAdd(intervalNanos);
+            long wait;
+            while ((wait = slot - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            return slot;
+        }
+    }
+
+    private static final class Stats implements RetryListener {
+
+        private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        private final Timer latency;
+        private final LongAdder created = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder commits = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+        private long lastReported;
+
+        Stats(Duration duration) {
+            // Percentiles cover the whole run instead of a rotating window
+            this.latency = Timer.builder("load.latency")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .percentilePrecision(3)
+                .distributionStatisticExpiry(duration.multipliedBy(2).plusMinutes(1))
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+        }
+
+        void record(Outcome outcome, long latencyNanos) {
+            latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+            switch (outcome) {
+                case CREATED -> created.increment();
+                case REJECTED -> rejected.increment();
+                case SHED -> shed.increment();
+                case FAILED -> failed.increment();
+            }
+        }
+
+        @Override
+        public void onSuccess(int attemptsMade) {
+            attempts.add(attemptsMade);
+            commits.increment();
+        }
+
+        @Override
+        public void onExhausted(int attemptsMade, OptimisticLockException exception) {
+            attempts.add(attemptsMade);
+            exhausted.increment();
+        }
+
+        void progress(Duration elapsed) {
+            long total = created.sum();
+            System.out.printf("[%4ds] %,d transfers, %,d in the last interval, p99 so far %.2f ms%n",
+                elapsed.toSeconds(), total, total - lastReported, percentile(0.99));
+            lastReported = total;
+        }
+
+        void report(Duration duration) {
+            long finished = commits.sum() + exhausted.sum();
+            System.out.printf("Throughput:       %,.1f transfers/s%n", created.sum() / (duration.toNanos() / 1e9));
+            System.out.printf("Created:          %,d%n", created.sum());
+            System.out.printf("Rejected:         %,d%n", rejected.sum());
+            System.out.printf("Shed:             %,d%n", shed.sum());
+            System.out.printf("Failed:           %,d%n", failed.sum());
+            System.out.printf("Latency p50:      %.2f ms%n", percentile(0.5));
+            System.out.printf("Latency p99:      %.2f ms%n", percentile(0.99));
+            System.out.printf("Latency p999:     %.2f ms%n", percentile(0.999));
+            System.out.printf("Latency max:      %.2f ms%n", latency.max(TimeUnit.MILLISECONDS));
+            System.out.printf("Attempts/commit:  %.3f%n", commits.sum() == 0 ? 0 : attempts.sum() / (double) commits.sum());
+            System.out.printf("Retry exhaustion: %.4f%%%n", finished == 0 ? 0 : 100.0 * exhausted.sum() / finished);
+        }
+
+        private double percentile(double percentile) {
+            return Arrays.stream(latency.takeSnapshot().percentileValues())
+                .filter(value -> value.percentile() == percentile)
+                .mapToDouble(value -> value.value(TimeUnit.MILLISECONDS))
+                .findFirst()
+                .orElse(Double.NaN);
+        }
+    }
+
+    /**
+     * @param skew            {@code uniform}, {@code zipf} or {@code hot}
+     * @param hotShare        with {@code hot} skew, the share of picks that go to the single hot account
+     * @param threads         number of workers, each running one transfer at a time
+     * @param rate            target transfers per second across all workers, or 0 for as fast as possible
+     * @param http            whether to go through {@code POST /transfers} instead of calling the service
+     * @param springProperties extra application properties, e.g. {@code transfers.balance-update-mode=delta}
+     */
+    record Settings(
+        int accounts,
+        String skew,
+        double hotShare,
+        int threads,
+        boolean virtualThreads,
+        double rate,
+        Duration duration,
+        Duration reportInterval,
+        boolean http,
+        List<String> springProperties
+    ) {
+
+        static Settings fromSystemProperties() {
+            int accounts = Integer.getInteger("load.accounts", 1_000);
+            if (accounts < 2) {
+                throw new IllegalArgumentException(
+                    "load.accounts must be at least 2, as every transfer needs two: " + accounts
+                );
+            }
+            var extra = System.getProperty("load.properties", "");
+            return new Settings(
+                accounts,
+                System.getProperty("load.skew", "uniform"),
+                Double.parseDouble(System.getProperty("load.hot-share", "0.5")),
+                Integer.getInteger("load.threads", 32),
+                Boolean.getBoolean("load.virtual-threads"),
+                Double.parseDouble(System.getProperty("load.rate", "0")),
+                DurationStyle.detectAndParse(System.getProperty("load.duration", "1m")),
+                DurationStyle.detectAndParse(System.getProperty("load.report-interval", "10s")),
+                System.getProperty("load.target", "service").equals("http"),
+                extra.isBlank() ? List.of() : List.of(extra.split(";"))
+            );
+        }
+
+        @Override
+        public String toString() {
+            return (http ? "HTTP" : "service") + " transfers on " + threads
+                + (virtualThreads ? " virtual threads" : " threads")
+                + (rate > 0 ? " at " + rate + "/s" : " unthrottled")
+                + (springProperties.isEmpty() ? "" : " with " + springProperties);
+        }
+    }
+}
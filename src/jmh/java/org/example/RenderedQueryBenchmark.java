@@ -0,0 +1,139 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+
+/**
+ * The statements of one versioned transfer (two reads by id, two versioned updates and an insert),
+ * built and mapped per call with the jOOQ DSL as before ({@code dsl}), or through the pre-rendered
+ * queries of the repositories ({@code rendered}). The GC profiler gives allocations per transfer;
+ * {@code cpuNanos / transfers} of the auxiliary counters gives the CPU time the calling thread spent per transfer,
+ * which excludes the time spent waiting for the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderedQueryBenchmark {
+
+    private static final long AMOUNT = 1L;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Field<Long> BALANCE = AccountRepository.balance(false).as(ACCOUNT.BALANCE.getName());
+
+    @Param({"1024"})
+    private int accounts;
+
+    @Param({"dsl", "rendered"})
+    private String path;
+
+    private ConfigurableApplicationContext context;
+    private DSLContext dsl;
+    private TransactionTemplate transactionTemplate;
+    private AccountRepository accountRepository;
+    private TransferRepository transferRepository;
+    private AccountSelector selector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("accounts.cache.enabled=false");
+        dsl = context.getBean(DSLContext.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        accountRepository = context.getBean(AccountRepository.class);
+        transferRepository = context.getBean(TransferRepository.class);
+        selector = AccountSelector.uniform(BenchmarkContext.resetAccounts(context, accounts, Long.MAX_VALUE / 4));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cpu {
+
+        public long cpuNanos;
+        public long transfers;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanos = 0;
+            transfers = 0;
+        }
+    }
+
+    @Benchmark
+    public Transfer transfer(Cpu cpu) {
+        var fromId = selector.next();
+        var toId = selector.nextOtherThan(fromId);
+        long start = THREADS.getCurrentThreadCpuTime();
+        try {
+            return transactionTemplate.execute(_ -> path.equals("dsl") ? viaDsl(fromId, toId) : viaRendered(fromId, toId));
+        } catch (OptimisticLockException e) {
+            return null;
+        } finally {
+            cpu.cpuNanos += THREADS.getCurrentThreadCpuTime() - start;
+            cpu.transfers++;
+        }
+    }
+
+    private Transfer viaRendered(UUID fromId, UUID toId) {
+        var from = accountRepository.findById(fromId);
+        var to = accountRepository.findById(toId);
+        accountRepository.update(from.withBalance(from.balance() - AMOUNT));
+        accountRepository.update(to.withBalance(to.balance() + AMOUNT));
+        return transferRepository.save(new Transfer(randomUUID(), fromId, toId, AMOUNT));
+    }
+
+    // The statements as the repositories built them before they were pre-rendered
+    private Transfer viaDsl(UUID fromId, UUID toId) {
+        var from = findByIdDsl(fromId);
+        var to = findByIdDsl(toId);
+        updateDsl(from.withBalance(from.balance() - AMOUNT));
+        updateDsl(to.withBalance(to.balance() + AMOUNT));
+        var transfer = new Transfer(randomUUID(), fromId, toId, AMOUNT);
+        dsl.newRecord(TRANSFER, transfer).insert();
+        return transfer;
+    }
+
+    private Account findByIdDsl(UUID id) {
+        return dsl.select(ACCOUNT.ID, BALANCE, ACCOUNT.VERSION)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.eq(id))
+            .fetchOneInto(Account.class);
+    }
+
+    private void updateDsl(Account account) {
+        int rowsUpdated = dsl.update(ACCOUNT)
+            .set(ACCOUNT.BALANCE, account.balance())
+            .set(ACCOUNT.VERSION, account.version() + 1)
+            .where(ACCOUNT.ID.eq(account.id()))
+            .and(ACCOUNT.VERSION.eq(account.version()))
+            .and(ACCOUNT.STRIPE_COUNT.eq(0))
+            .execute();
+        if (rowsUpdated == 0) {
+            throw new OptimisticLockException("Account " + account.id() + " has been modified");
+        }
+    }
+}
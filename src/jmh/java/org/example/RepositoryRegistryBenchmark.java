@@ -0,0 +1,36 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RepositoryRegistryBenchmark {
+
+    private RepositoryRegistry repositoryRegistry;
+
+    @Setup
+    public void setUp() {
+        repositoryRegistry = BatchBenchmark.sinkRegistry(new BatchBenchmark.Sink());
+    }
+
+    @Benchmark
+    public Repository<Account> accountRepository() {
+        return repositoryRegistry.getRepository(Account.class);
+    }
+
+    @Benchmark
+    public void bothRepositories(Blackhole blackhole) {
+        blackhole.consume(repositoryRegistry.getRepository(Account.class));
+        blackhole.consume(repositoryRegistry.getRepository(Transfer.class));
+    }
+}
@@ -0,0 +1,105 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * Versioned transfers through {@link UnitOfWork#executeRetriable} against PostgreSQL.
+ * Run with several thread counts ({@code -PjmhThreads=N}) to see how conflicts grow with concurrency;
+ * {@code attempts / commits} of the auxiliary counters is the number of attempts per commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnitOfWorkBenchmark {
+
+    private static final long AMOUNT = 1L;
+
+    @Param({"100"})
+    private int accounts;
+
+    @Param({"uniform", "zipf"})
+    private String distribution;
+
+    private ConfigurableApplicationContext context;
+    private UnitOfWork unitOfWork;
+    private AccountSelector selector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        unitOfWork = context.getBean(UnitOfWork.class);
+        selector = AccountSelector.of(distribution, BenchmarkContext.resetAccounts(context, accounts, Long.MAX_VALUE / 4));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Attempts {
+
+        public long attempts;
+        public long commits;
+        public long exhausted;
+
+        RetryPolicy retryPolicy;
+
+        @Setup(Level.Iteration)
+        public void reset(UnitOfWorkBenchmark benchmark) {
+            attempts = 0;
+            commits = 0;
+            exhausted = 0;
+            retryPolicy = benchmark.unitOfWork.getRetryPolicy().withListener(new RetryListener() {
+                @Override
+                public void onSuccess(int attemptsMade) {
+                    attempts += attemptsMade;
+                    commits++;
+                }
+
+                @Override
+                public void onExhausted(int attemptsMade, OptimisticLockException exception) {
+                    attempts += attemptsMade;
+                    exhausted++;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public Transfer transfer(Attempts counters) {
+        var fromId = selector.next();
+        var toId = selector.nextOtherThan(fromId);
+        try {
+            return unitOfWork.executeRetriable(counters.retryPolicy, batch -> {
+                var found = batch.findAll(Account.class, List.of(fromId, toId));
+                var from = found.get(fromId);
+                var to = found.get(toId);
+                batch.update(from.withBalance(from.balance() - AMOUNT));
+                batch.update(to.withBalance(to.balance() + AMOUNT));
+                var transfer = new Transfer(randomUUID(), fromId, toId, AMOUNT);
+                batch.insert(transfer);
+                return transfer;
+            });
+        } catch (OptimisticLockException e) {
+            return null;
+        }
+    }
+}
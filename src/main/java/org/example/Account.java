@@ -9,9 +9,18 @@ public record Account(UUID id, long balance, long version) implements Entity {
         return id;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
     public Account withBalance(long balance) {
         return new Account(this.id, balance, this.version);
     }
 
+    public Account withVersion(long version) {
+        return new Account(this.id, this.balance, version);
+    }
+
 }
 
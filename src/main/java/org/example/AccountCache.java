@@ -0,0 +1,162 @@
+package org.example;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.example.TransferProperties.BalanceUpdateMode.VERSIONED;
+
+/**
+ * Bounded, version-aware cache of accounts shared by all units of work.
+ * Serving reads from it is safe because every versioned update checks the version at commit;
+ * a stale entry costs one retry, after which it is evicted. The cache is split into segments,
+ * each evicting its least recently used entries, to keep lock contention low.
+ * <p>
+ * Only versioned updates bump the version, so the cache is off in the other balance update modes, where
+ * adjustments, stripes and ledger entries change balances behind it. Rows read from a replica are not stored,
+ * and entries expire after {@code ttl}, which bounds how long writes of other nodes go unseen.
+ */
+@Component
+public class AccountCache implements CommitListener {
+
+    private static final int SEGMENTS = 16;
+
+    private final boolean enabled;
+    // Without replicas, reads asked to go to one come from the primary and can be stored
+    private final boolean readsFromReplicas;
+    private final long ttlNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleRetries = new LongAdder();
+
+    public AccountCache(
+        AccountProperties properties,
+        TransferProperties transferProperties,
+        ReplicaProperties replicaProperties
+    ) {
+        this.enabled = properties.cache().enabled() && transferProperties.balanceUpdateMode() == VERSIONED;
+        this.readsFromReplicas = replicaProperties.enabled() && !replicaProperties.urls().isEmpty();
+        this.ttlNanos = properties.cache().ttl().toNanos();
+        int segmentSize = Math.max(1, properties.cache().maxSize() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Account get(UUID id) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        var segment = segmentFor(id);
+        synchronized (segment) {
+            entry = segment.get(id);
+            if (entry != null && entry.isExpired()) {
+                segment.remove(id);
+                entry = null;
+            }
+        }
+        (entry != null ? hits : misses).increment();
+        return entry != null ? entry.account() : null;
+    }
+
+    /**
+     * Stores an account unless a newer version of it is cached already, or it was read from a replica.
+     */
+    public void put(Account account) {
+        if (!enabled || readsFromReplicas && ReplicaRoutingDataSource.isReadingFromReplica()) {
+            return;
+        }
+        var loaded = new Entry(account, System.nanoTime() + ttlNanos);
+        var segment = segmentFor(account.id());
+        synchronized (segment) {
+            segment.merge(account.id(), loaded, (cached, _) ->
+                account.version() >= cached.account().version() || cached.isExpired() ? loaded : cached);
+        }
+    }
+
+    public void evict(Collection<UUID> ids) {
+        if (!enabled) {
+            return;
+        }
+        ids.forEach(this::evict);
+    }
+
+    @Override
+    public void onCommitted(Batch batch) {
+        if (!enabled) {
+            return;
+        }
+        batch.getInserts(Account.class).forEach(this::put);
+        batch.getUpdates(Account.class).forEach(account -> put(account.withVersion(account.version() + 1)));
+        // The resulting balance of an adjustment is not known without reading it back
+        batch.getAdjustments().forEach(adjustment -> evict(adjustment.accountId()));
+    }
+
+    @Override
+    public void onConflict(Batch batch, OptimisticLockException conflict) {
+        if (!enabled) {
+            return;
+        }
+        for (var id : conflict.getConflictingIds()) {
+            if (evict(id)) {
+                staleRetries.increment();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStaleRetries() {
+        return staleRetries.sum();
+    }
+
+    private boolean evict(UUID id) {
+        var segment = segmentFor(id);
+        synchronized (segment) {
+            return segment.remove(id) != null;
+        }
+    }
+
+    private Segment segmentFor(UUID id) {
+        return segments[(id.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    private record Entry(Account account, long expiresAt) {
+
+        boolean isExpired() {
+            return expiresAt - System.nanoTime() <= 0;
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<UUID, Entry> {
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package org.example;
 
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -10,10 +17,23 @@ import java.util.UUID;
 @RequestMapping("/accounts")
 public class AccountController {
     
+    private static final int MAX_PAGE_SIZE = 1_000;
+
     private final AccountRepository accountRepository;
-    
-    public AccountController(AccountRepository accountRepository) {
+    private final TransferRepository transferRepository;
+    private final StripingService stripingService;
+    private final JsonStreaming jsonStreaming;
+
+    public AccountController(
+        AccountRepository accountRepository,
+        TransferRepository transferRepository,
+        StripingService stripingService,
+        JsonStreaming jsonStreaming
+    ) {
         this.accountRepository = accountRepository;
+        this.transferRepository = transferRepository;
+        this.stripingService = stripingService;
+        this.jsonStreaming = jsonStreaming;
     }
     
     @PostMapping
@@ -26,12 +46,94 @@ public class AccountController {
         ));
     }
 
-    @GetMapping
-    public List<Account> getAllAccounts() {
-        return accountRepository.findAll();
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllAccounts() {
+        return jsonStreaming.jsonArray(accountRepository::streamAll);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllAccounts() {
+        return jsonStreaming.ndjson(accountRepository::streamAll);
+    }
+
+    /**
+     * Loads accounts from a CSV ({@code id,balance} with a header line) or binary {@code COPY} body
+     * in one statement; either all of them are loaded or none.
+     */
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ImportResult importAccounts(InputStream body, @RequestParam(defaultValue = "CSV") CopyFormat format) {
+        return new ImportResult(accountRepository.importAll(format, body));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts(@RequestParam(defaultValue = "CSV") CopyFormat format) {
+        return ResponseEntity.ok()
+            .contentType(format.mediaType())
+            .body(out -> ReplicaRoutingDataSource.readFromReplica(() -> accountRepository.exportAll(format, out)));
+    }
+
+    @GetMapping(params = "limit")
+    public List<Account> getAccountsPage(
+        @RequestParam(required = false) UUID after,
+        @RequestParam int limit
+    ) {
+        return ReplicaRoutingDataSource.readFromReplica(
+            () -> accountRepository.findPage(after, Math.clamp(limit, 1, MAX_PAGE_SIZE))
+        );
+    }
+
+    /**
+     * Returns the transfers of an account created in {@code [from, to)}, oldest first. Pass {@code next}
+     * of a page as {@code after} to get the following page; it is {@code null} on the last page.
+     */
+    @GetMapping("/{id}/transfers")
+    public StatementPage getStatement(
+        @PathVariable UUID id,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+        @RequestParam(required = false) String after,
+        @RequestParam(defaultValue = "100") int limit
+    ) {
+        StatementCursor cursor;
+        try {
+            cursor = after == null ? null : StatementCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        var entries = ReplicaRoutingDataSource.readFromReplica(() -> {
+            if (accountRepository.findById(id) == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account " + id + " not found");
+            }
+            return transferRepository.findStatement(id, from, to, cursor, pageSize);
+        });
+        var next = entries.size() < pageSize ? null : StatementCursor.of(entries.getLast()).encode();
+        return new StatementPage(entries, next);
+    }
+
+    @PutMapping("/{id}/stripes")
+    public Account restripe(@PathVariable UUID id, @RequestBody RestripeRequest request) {
+        Account account;
+        try {
+            account = stripingService.restripe(id, request.stripes());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+        if (account == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account " + id + " not found");
+        }
+        return account;
     }
 
     public record CreateAccountRequest(long balance) {
     }
-}
 
+    public record RestripeRequest(int stripes) {
+    }
+
+    public record StatementPage(List<StatementEntry> entries, String next) {
+    }
+}
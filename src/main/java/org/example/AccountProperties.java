@@ -0,0 +1,17 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("accounts")
+public record AccountProperties(@DefaultValue Cache cache) {
+
+    public record Cache(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("100000") int maxSize,
+        @DefaultValue("5s") Duration ttl
+    ) {
+    }
+}
@@ -1,53 +1,536 @@
 package org.example;
 
+import org.jooq.CommonTableExpression;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.Records;
+import org.jooq.Row3;
+import org.jooq.Select;
+import org.jooq.SelectJoinStep;
 import org.springframework.stereotype.Repository;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toCollection;
+import static org.example.TransferProperties.BalanceUpdateMode.LEDGER;
 import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.ACCOUNT_STRIPE;
+import static org.example.jooq.Tables.LEDGER_ENTRY;
+import static org.jooq.impl.DSL.any;
+import static org.jooq.impl.DSL.cast;
+import static org.jooq.impl.DSL.coalesce;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.noCondition;
+import static org.jooq.impl.DSL.param;
+import static org.jooq.impl.DSL.rand;
+import static org.jooq.impl.DSL.row;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.sum;
+import static org.jooq.impl.DSL.val;
+import static org.jooq.impl.DSL.values;
+import static org.jooq.impl.DSL.when;
+import static org.jooq.impl.SQLDataType.BIGINT;
 
 @Repository
-public class AccountRepository implements org.example.Repository<Account> {
+public class AccountRepository implements org.example.Repository<Account>, BalanceRepository {
+
+    private static final int FETCH_SIZE = 1_000;
 
     private final DSLContext dsl;
+    private final AccountCache accountCache;
+    private final boolean ledger;
+    private final Field<Long> balance;
+    private final RenderedQuery findByIdQuery;
+    private final RenderedQuery updateQuery;
+    private final RenderedQuery saveQuery;
 
-    public AccountRepository(DSLContext dsl) {
+    public AccountRepository(DSLContext dsl, AccountCache accountCache, TransferProperties transferProperties) {
         this.dsl = dsl;
+        this.accountCache = accountCache;
+        this.ledger = transferProperties.balanceUpdateMode() == LEDGER;
+        this.balance = balance(ledger).as(ACCOUNT.BALANCE.getName());
+
+        this.findByIdQuery = new RenderedQuery(
+            dsl,
+            selectAccounts().where(ACCOUNT.ID.eq(param("id", ACCOUNT.ID.getDataType()))),
+            "id"
+        );
+        this.updateQuery = new RenderedQuery(
+            dsl,
+            dsl.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, param("balance", ACCOUNT.BALANCE.getDataType()))
+                .set(ACCOUNT.VERSION, ACCOUNT.VERSION.plus(1))
+                .where(ACCOUNT.ID.eq(param("id", ACCOUNT.ID.getDataType())))
+                .and(ACCOUNT.VERSION.eq(param("version", ACCOUNT.VERSION.getDataType())))
+                .and(ACCOUNT.STRIPE_COUNT.eq(0)),
+            "id", "balance", "version"
+        );
+        this.saveQuery = new RenderedQuery(
+            dsl,
+            dsl.insertInto(ACCOUNT, ACCOUNT.ID, ACCOUNT.BALANCE, ACCOUNT.VERSION)
+                .values(
+                    param("id", ACCOUNT.ID.getDataType()),
+                    param("balance", ACCOUNT.BALANCE.getDataType()),
+                    param("version", ACCOUNT.VERSION.getDataType())
+                ),
+            "id", "balance", "version"
+        );
     }
 
     @Override
     public Account save(Account account) {
-        dsl.newRecord(ACCOUNT, account).insert();
+        saveQuery.execute(account.id(), account.balance(), account.version());
         return account;
     }
 
     @Override
-    public void update(Account account) {
-        int rowsUpdated = dsl.update(ACCOUNT)
-            .set(ACCOUNT.BALANCE, account.balance())
-            .set(ACCOUNT.VERSION, account.version() + 1)
-            .where(ACCOUNT.ID.eq(account.id()))
-            .and(ACCOUNT.VERSION.eq(account.version()))
+    public void saveAll(List<Account> accounts) {
+        dsl.insertInto(ACCOUNT, ACCOUNT.ID, ACCOUNT.BALANCE, ACCOUNT.VERSION)
+            .valuesOfRows(accounts.stream()
+                .map(account -> row(account.id(), account.balance(), account.version()))
+                .toList())
             .execute();
+    }
+
+    @Override
+    public void update(Account account) {
+        rejectInLedgerMode();
+        int rowsUpdated = updateQuery.execute(account.id(), account.balance(), account.version());
 
         if (rowsUpdated == 0) {
+            rejectStriped(Set.of(account.id()));
             throw new OptimisticLockException(
                 "Account with id " + account.id() + " has been modified by another transaction. " +
-                    "Expected version: " + account.version()
+                    "Expected version: " + account.version(),
+                Set.of(account.id())
+            );
+        }
+    }
+
+    /**
+     * Updates all accounts with a single {@code UPDATE ... FROM (VALUES ...)} statement.
+     * Rows are locked in id order by a materialized {@code SELECT ... FOR NO KEY UPDATE} before being updated,
+     * which keeps the lock acquisition order of the per-row path.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void updateAll(List<Account> accounts) {
+        rejectInLedgerMode();
+        var ids = accounts.stream().map(Account::id).collect(toCollection(HashSet::new));
+        if (accounts.size() == 1 || ids.size() != accounts.size()) {
+            // A repeated id would be applied only once by the joined update; keep per-row semantics
+            accounts.forEach(this::update);
+            return;
+        }
+
+        var locked = lockedInIdOrder(ids);
+        Row3<UUID, Long, Long>[] rows = accounts.stream()
+            .map(account -> bindRow(account.id(), account.balance(), account.version()))
+            .toArray(Row3[]::new);
+        var changes = values(rows).as("changes", "id", "balance", "version");
+
+        var updatedIds = dsl.with(locked)
+            .update(ACCOUNT)
+            .set(ACCOUNT.BALANCE, changes.field("balance", Long.class))
+            .set(ACCOUNT.VERSION, ACCOUNT.VERSION.plus(1))
+            .from(changes, locked)
+            .where(ACCOUNT.ID.eq(changes.field("id", UUID.class)))
+            .and(ACCOUNT.ID.eq(locked.field("id", UUID.class)))
+            .and(ACCOUNT.VERSION.eq(changes.field("version", Long.class)))
+            .returning(ACCOUNT.ID)
+            .fetchSet(ACCOUNT.ID);
+
+        if (updatedIds.size() != ids.size()) {
+            ids.removeAll(updatedIds);
+            rejectStriped(ids);
+            throw new OptimisticLockException(
+                "Accounts with ids " + ids + " have been modified by another transaction",
+                ids
             );
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void adjustBalances(List<BalanceAdjustment> adjustments) {
+        var ids = adjustments.stream().map(BalanceAdjustment::accountId).collect(toCollection(HashSet::new));
+        Set<UUID> adjustedIds;
+
+        if (adjustments.size() == 1) {
+            var adjustment = adjustments.getFirst();
+            adjustedIds = dsl.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(adjustment.delta()))
+                .set(ACCOUNT.VERSION, ACCOUNT.VERSION.plus(1))
+                .where(ACCOUNT.ID.eq(adjustment.accountId()))
+                .and(ACCOUNT.STRIPE_COUNT.eq(0))
+                .and(ACCOUNT.BALANCE.plus(adjustment.delta()).ge(adjustment.minBalance()))
+                .returning(ACCOUNT.ID)
+                .fetchSet(ACCOUNT.ID);
+        } else {
+            Row3<UUID, Long, Long>[] rows = adjustments.stream()
+                .map(adjustment -> bindRow(adjustment.accountId(), adjustment.delta(), adjustment.minBalance()))
+                .toArray(Row3[]::new);
+            var changes = values(rows).as("changes", "id", "delta", "min_balance");
+            var locked = lockedInIdOrder(ids);
+            var delta = changes.field("delta", Long.class);
+
+            adjustedIds = dsl.with(locked)
+                .update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(delta))
+                .set(ACCOUNT.VERSION, ACCOUNT.VERSION.plus(1))
+                .from(changes, locked)
+                .where(ACCOUNT.ID.eq(changes.field("id", UUID.class)))
+                .and(ACCOUNT.ID.eq(locked.field("id", UUID.class)))
+                .and(ACCOUNT.BALANCE.plus(delta).ge(changes.field("min_balance", Long.class)))
+                .returning(ACCOUNT.ID)
+                .fetchSet(ACCOUNT.ID);
+        }
+
+        if (adjustedIds.size() == ids.size()) {
+            return;
+        }
+
+        ids.removeAll(adjustedIds);
+        var stripedIds = findStripedIds(ids);
+        adjustments.stream()
+            .filter(adjustment -> stripedIds.contains(adjustment.accountId()))
+            .forEach(this::adjustStripe);
+        ids.removeAll(stripedIds);
+
+        if (!ids.isEmpty()) {
+            throw new InsufficientFundsException(ids);
+        }
+    }
+
+    /**
+     * Moves the whole balance of an account into {@code stripes} sub-balances, or back into the account row
+     * when {@code stripes} is zero. Must run inside a transaction.
+     *
+     * @return the account after re-striping, or {@code null} if it does not exist
+     */
+    public Account restripe(UUID id, int stripes) {
+        if (ledger) {
+            // Ledger entries never update the account row, so there is no hot row to spread
+            throw new IllegalStateException("Accounts cannot be striped in ledger mode");
+        }
+        var account = dsl.select(ACCOUNT.BALANCE, ACCOUNT.VERSION)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.eq(id))
+            .forNoKeyUpdate()
+            .fetchOne();
+        if (account == null) {
+            return null;
+        }
+
+        long total = account.value1() + dsl.deleteFrom(ACCOUNT_STRIPE)
+            .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(id))
+            .returning(ACCOUNT_STRIPE.BALANCE)
+            .fetch(ACCOUNT_STRIPE.BALANCE)
+            .stream()
+            .mapToLong(Long::longValue)
+            .sum();
+        long version = account.value2() + 1;
+
+        dsl.update(ACCOUNT)
+            .set(ACCOUNT.BALANCE, stripes == 0 ? total : 0L)
+            .set(ACCOUNT.STRIPE_COUNT, stripes)
+            .set(ACCOUNT.VERSION, version)
+            .where(ACCOUNT.ID.eq(id))
+            .execute();
+
+        if (stripes > 0) {
+            var rows = new ArrayList<Row3<UUID, Integer, Long>>(stripes);
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                long share = total / stripes + (stripe == 0 ? total % stripes : 0);
+                rows.add(row(id, stripe, share));
+            }
+            dsl.insertInto(ACCOUNT_STRIPE, ACCOUNT_STRIPE.ACCOUNT_ID, ACCOUNT_STRIPE.STRIPE, ACCOUNT_STRIPE.BALANCE)
+                .valuesOfRows(rows)
+                .execute();
+        }
+
+        return new Account(id, total, version);
+    }
+
     public List<Account> findAll() {
-        return dsl.selectFrom(ACCOUNT).fetchInto(Account.class);
+        return selectAccounts().fetch(Records.mapping(Account::new));
+    }
+
+    /**
+     * Returns up to {@code limit} accounts ordered by id, starting after the given id.
+     */
+    public List<Account> findPage(UUID after, int limit) {
+        return selectAccounts()
+            .where(after == null ? noCondition() : ACCOUNT.ID.gt(after))
+            .orderBy(ACCOUNT.ID)
+            .limit(limit)
+            .fetch(Records.mapping(Account::new));
+    }
+
+    /**
+     * Streams all accounts ordered by id from a server-side cursor. Must run inside a transaction,
+     * and the returned stream must be closed.
+     */
+    public Stream<Account> streamAll() {
+        return selectAccounts()
+            .orderBy(ACCOUNT.ID)
+            .fetchSize(FETCH_SIZE)
+            .fetchStream()
+            .map(Records.mapping(Account::new));
+    }
+
+    /**
+     * Loads new accounts from {@code id,balance} rows, at version 0, in a single {@code COPY}. Imported accounts
+     * do not go through a unit of work, so they are not in the change feed.
+     *
+     * @return the number of accounts loaded
+     */
+    public long importAll(CopyFormat format, InputStream in) {
+        return PgCopy.copyIn(dsl, ACCOUNT, format, in, ACCOUNT.ID, ACCOUNT.BALANCE);
+    }
+
+    /**
+     * Writes all accounts ordered by id, in the columns {@link #importAll} reads, from a single {@code COPY}.
+     *
+     * @return the number of accounts written
+     */
+    public long exportAll(CopyFormat format, OutputStream out) {
+        return PgCopy.copyOut(dsl, dsl.select(ACCOUNT.ID, balance).from(ACCOUNT).orderBy(ACCOUNT.ID), format, out);
     }
 
     public Account findById(UUID id) {
-        return dsl.selectFrom(ACCOUNT)
-            .where(ACCOUNT.ID.eq(id))
-            .fetchOneInto(Account.class);
+        var cached = accountCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        var account = findByIdQuery.fetchOne(AccountRepository::readAccount, id);
+        if (account != null) {
+            accountCache.put(account);
+        }
+        return account;
     }
-}
 
+    /**
+     * Loads all requested accounts that are not cached with a single {@code WHERE id = ANY(?)} query.
+     */
+    @Override
+    public List<Account> findByIds(Collection<UUID> ids) {
+        var accounts = new ArrayList<Account>(ids.size());
+        var missingIds = new ArrayList<UUID>(ids.size());
+        for (var id : ids) {
+            var cached = accountCache.get(id);
+            if (cached != null) {
+                accounts.add(cached);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return accounts;
+        }
+
+        var loaded = selectAccounts()
+            .where(ACCOUNT.ID.eq(any(missingIds.toArray(UUID[]::new))))
+            .fetch(Records.mapping(Account::new));
+        loaded.forEach(accountCache::put);
+        accounts.addAll(loaded);
+        return accounts;
+    }
+
+    @Override
+    public List<Account> lockByIds(Collection<UUID> ids) {
+        var locked = selectAccounts()
+            .where(ACCOUNT.ID.in(ids))
+            .orderBy(ACCOUNT.ID)
+            .forNoKeyUpdate()
+            .fetch(Records.mapping(Account::new));
+        locked.forEach(accountCache::put);
+        return locked;
+    }
+
+    private SelectJoinStep<Record3<UUID, Long, Long>> selectAccounts() {
+        return dsl.select(ACCOUNT.ID, balance, ACCOUNT.VERSION).from(ACCOUNT);
+    }
+
+    /**
+     * Returns the current balance of the {@code account} row in scope. A striped account keeps its balance
+     * in account_stripe rows and the account row only holds the remainder. In ledger mode, the account row
+     * is a snapshot, and entries of transactions from its snapshot_xid on have not been folded into it yet.
+     */
+    static Field<Long> balance(boolean ledger) {
+        Field<Long> balance = when(ACCOUNT.STRIPE_COUNT.eq(0), ACCOUNT.BALANCE)
+            .otherwise(ACCOUNT.BALANCE.plus(coalesce(
+                field(select(sum(ACCOUNT_STRIPE.BALANCE))
+                    .from(ACCOUNT_STRIPE)
+                    .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(ACCOUNT.ID))),
+                BigDecimal.ZERO
+            ).cast(BIGINT)));
+        if (!ledger) {
+            return balance;
+        }
+        return balance.plus(coalesce(
+            field(select(sum(LEDGER_ENTRY.AMOUNT))
+                .from(LEDGER_ENTRY)
+                .where(LEDGER_ENTRY.ACCOUNT_ID.eq(ACCOUNT.ID))
+                .and(LEDGER_ENTRY.TX_ID.ge(ACCOUNT.SNAPSHOT_XID))),
+            BigDecimal.ZERO
+        ).cast(BIGINT));
+    }
+
+    /**
+     * Applies an adjustment to one stripe of a striped account. Credits go to a random stripe and debits
+     * to a random stripe that can cover them on its own; stripes locked by other transactions are skipped
+     * first, so concurrent transfers spread across stripes instead of queueing on one row. A debit no single
+     * stripe can cover is spread across all of them, guarded by the balance of the whole account.
+     */
+    private void adjustStripe(BalanceAdjustment adjustment) {
+        long guard = adjustment.delta() >= 0 || adjustment.minBalance() == BalanceAdjustment.NO_LIMIT
+            ? BalanceAdjustment.NO_LIMIT
+            : Math.max(adjustment.minBalance(), 0L);
+
+        if (adjustStripe(adjustment, guard, true) || adjustStripe(adjustment, guard, false)
+            || guard != BalanceAdjustment.NO_LIMIT && debitAcrossStripes(adjustment)) {
+            return;
+        }
+
+        var stripeCount = dsl.fetchCount(ACCOUNT_STRIPE, ACCOUNT_STRIPE.ACCOUNT_ID.eq(adjustment.accountId()));
+        if (stripeCount == 0) {
+            // The account has been re-striped while we were waiting for a stripe
+            throw new OptimisticLockException(
+                "Stripes of account " + adjustment.accountId() + " have been changed by another transaction",
+                Set.of(adjustment.accountId())
+            );
+        }
+        throw new InsufficientFundsException(Set.of(adjustment.accountId()));
+    }
+
+    private boolean adjustStripe(BalanceAdjustment adjustment, long guard, boolean skipLocked) {
+        var candidate = select(ACCOUNT_STRIPE.STRIPE)
+            .from(ACCOUNT_STRIPE)
+            .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(adjustment.accountId()))
+            .and(ACCOUNT_STRIPE.BALANCE.plus(adjustment.delta()).ge(guard))
+            .orderBy(rand())
+            .limit(1)
+            .forNoKeyUpdate();
+        Select<Record1<Integer>> stripe = skipLocked ? candidate.skipLocked() : candidate;
+
+        return dsl.update(ACCOUNT_STRIPE)
+            .set(ACCOUNT_STRIPE.BALANCE, ACCOUNT_STRIPE.BALANCE.plus(adjustment.delta()))
+            .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(adjustment.accountId()))
+            .and(ACCOUNT_STRIPE.STRIPE.eq(field(stripe)))
+            .execute() > 0;
+    }
+
+    /**
+     * Locks the account row and then all of its stripes in stripe order, and takes the debit from the stripes
+     * in that order, leaving none of them negative; what they cannot cover comes from the account row.
+     *
+     * @return whether the account is still striped and its whole balance covers the debit
+     */
+    private boolean debitAcrossStripes(BalanceAdjustment adjustment) {
+        var remainder = dsl.select(ACCOUNT.BALANCE)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.eq(adjustment.accountId()))
+            .and(ACCOUNT.STRIPE_COUNT.gt(0))
+            .forNoKeyUpdate()
+            .fetchOne(ACCOUNT.BALANCE);
+        if (remainder == null) {
+            return false;
+        }
+        var stripes = dsl.select(ACCOUNT_STRIPE.STRIPE, ACCOUNT_STRIPE.BALANCE)
+            .from(ACCOUNT_STRIPE)
+            .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(adjustment.accountId()))
+            .orderBy(ACCOUNT_STRIPE.STRIPE)
+            .forNoKeyUpdate()
+            .fetch();
+        long total = remainder + stripes.stream().mapToLong(Record2::value2).sum();
+        if (total + adjustment.delta() < adjustment.minBalance()) {
+            return false;
+        }
+
+        long left = -adjustment.delta();
+        for (var stripe : stripes) {
+            long taken = Math.min(Math.max(stripe.value2(), 0L), left);
+            if (taken > 0) {
+                dsl.update(ACCOUNT_STRIPE)
+                    .set(ACCOUNT_STRIPE.BALANCE, ACCOUNT_STRIPE.BALANCE.minus(taken))
+                    .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(adjustment.accountId()))
+                    .and(ACCOUNT_STRIPE.STRIPE.eq(stripe.value1()))
+                    .execute();
+                left -= taken;
+            }
+        }
+        if (left > 0) {
+            dsl.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(left))
+                .set(ACCOUNT.VERSION, ACCOUNT.VERSION.plus(1))
+                .where(ACCOUNT.ID.eq(adjustment.accountId()))
+                .execute();
+        }
+        return true;
+    }
+
+    private Set<UUID> findStripedIds(Collection<UUID> ids) {
+        return dsl.select(ACCOUNT.ID)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.in(ids))
+            .and(ACCOUNT.STRIPE_COUNT.gt(0))
+            .fetchSet(ACCOUNT.ID);
+    }
+
+    private void rejectStriped(Collection<UUID> ids) {
+        var stripedIds = findStripedIds(ids);
+        if (!stripedIds.isEmpty()) {
+            throw new IllegalStateException(
+                "Accounts " + stripedIds + " are striped and only accept balance adjustments, not versioned updates"
+            );
+        }
+    }
+
+    private static Account readAccount(ResultSet resultSet) throws SQLException {
+        return new Account(resultSet.getObject(1, UUID.class), resultSet.getLong(2), resultSet.getLong(3));
+    }
+
+    private void rejectInLedgerMode() {
+        if (ledger) {
+            throw new IllegalStateException(
+                "Accounts only accept balance adjustments in ledger mode, not versioned updates"
+            );
+        }
+    }
+
+    private static CommonTableExpression<Record1<UUID>> lockedInIdOrder(Collection<UUID> ids) {
+        return name("locked").fields("id").asMaterialized(
+            select(ACCOUNT.ID)
+                .from(ACCOUNT)
+                .where(ACCOUNT.ID.in(ids))
+                .and(ACCOUNT.STRIPE_COUNT.eq(0))
+                .orderBy(ACCOUNT.ID)
+                .forNoKeyUpdate()
+        );
+    }
+
+    static Row3<UUID, Long, Long> bindRow(UUID id, long first, long second) {
+        return row(
+            cast(val(id), ACCOUNT.ID.getDataType()),
+            cast(val(first), BIGINT),
+            cast(val(second), BIGINT)
+        );
+    }
+}
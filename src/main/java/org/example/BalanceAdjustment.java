@@ -0,0 +1,19 @@
+package org.example;
+
+import java.util.UUID;
+
+/**
+ * A commutative change of an account balance. The guard {@code minBalance} applies to the resulting balance.
+ */
+public record BalanceAdjustment(UUID accountId, long delta, long minBalance) {
+
+    public static final long NO_LIMIT = Long.MIN_VALUE;
+
+    public BalanceAdjustment merge(BalanceAdjustment other) {
+        return new BalanceAdjustment(
+            accountId,
+            Math.addExact(delta, other.delta),
+            Math.max(minBalance, other.minBalance)
+        );
+    }
+}
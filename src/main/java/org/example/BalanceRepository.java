@@ -0,0 +1,14 @@
+package org.example;
+
+import java.util.List;
+
+public interface BalanceRepository {
+
+    /**
+     * Applies balance adjustments without a prior read or version match.
+     * Adjustments are expected to be sorted by account id.
+     *
+     * @throws InsufficientFundsException if a resulting balance would fall below its guard
+     */
+    void adjustBalances(List<BalanceAdjustment> adjustments);
+}
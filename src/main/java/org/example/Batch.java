@@ -1,32 +1,248 @@
 package org.example;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 
 import static java.util.Comparator.comparing;
 
+/**
+ * Pending writes of one attempt of a unit of work, keyed by entity type and id. Registering the same entity again
+ * replaces its pending state, so each entity is written once with the version it was read at, and reads through
+ * the batch see the pending state. Registrations that would be sure to fail at flush are rejected right away.
+ */
 public class Batch {
 
-    private final List<Entity> toInsert = new ArrayList<>();
-    private final List<Entity> toUpdate = new ArrayList<>();
+    // Inserts keep the order in which entity types were first registered, so that referenced rows go first
+    private final Map<Class<?>, LinkedHashMap<UUID, Entity>> toInsert = new LinkedHashMap<>();
+    // Updates are flushed type by type in a fixed order, and by id within a type, to keep lock ordering stable;
+    // each list is kept sorted by id as entities are registered
+    private final Map<Class<?>, ArrayList<Entity>> toUpdate = new TreeMap<>(comparing(Class::getName));
+    // Balance adjustments are merged per account and kept sorted by account id
+    private final Map<UUID, BalanceAdjustment> toAdjust = new TreeMap<>();
+    // Ids of pending updates read back through the batch since they were last updated
+    private final Set<UUID> rereadUpdates = new HashSet<>();
 
+    private final IdentityMap identityMap;
+
+    public Batch(IdentityMap identityMap) {
+        this.identityMap = identityMap;
+    }
+
+    /**
+     * Reads an entity through the identity map of the unit of work; an entity read twice costs one query.
+     * An entity registered in this batch is returned in its pending state.
+     */
+    public <T extends Entity> T find(Class<T> type, UUID id) {
+        var pending = pendingWrite(type, id);
+        return pending != null ? pending : identityMap.find(type, id);
+    }
+
+    /**
+     * Reads several entities with one query for those not loaded yet; ids that do not exist are left out.
+     * Entities registered in this batch are returned in their pending state.
+     */
+    public <T extends Entity> Map<UUID, T> findAll(Class<T> type, Collection<UUID> ids) {
+        var loaded = identityMap.findAll(type, ids);
+        if (!toInsert.containsKey(type) && !toUpdate.containsKey(type)) {
+            return loaded;
+        }
+        Map<UUID, T> found = new LinkedHashMap<>();
+        for (var id : ids) {
+            var pending = pendingWrite(type, id);
+            var entity = pending != null ? pending : loaded.get(id);
+            if (entity != null) {
+                found.put(id, entity);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @throws IllegalStateException if an entity with the same id is already registered in this batch
+     */
     public <T extends Entity> void insert(T entity) {
-        toInsert.add(entity);
+        var id = entity.getId();
+        var updates = toUpdate.get(entity.getClass());
+        if (updates != null && indexOf(updates, id) >= 0) {
+            throw new IllegalStateException(describe(entity) + " is already registered for update");
+        }
+        var previous = toInsert.computeIfAbsent(entity.getClass(), _ -> new LinkedHashMap<>()).putIfAbsent(id, entity);
+        if (previous != null) {
+            throw new IllegalStateException(describe(entity) + " is already registered for insert");
+        }
     }
 
+    /**
+     * Registers the final state of an entity. Updating an entity again, or one inserted in this batch,
+     * replaces its pending state. An entity updated again must have been read back through the batch in between,
+     * so that the new state builds on the pending one instead of silently dropping it.
+     *
+     * @throws IllegalStateException if the entity is already registered at another version, which means
+     *                               it was not derived from the state read in this unit of work, or if it is
+     *                               updated again without its pending state having been read back
+     */
     public <T extends Entity> void update(T entity) {
-        toUpdate.add(entity);
+        var id = entity.getId();
+        var inserts = toInsert.get(entity.getClass());
+        if (inserts != null && inserts.containsKey(id)) {
+            requireSameVersion(inserts.get(id), entity);
+            inserts.put(id, entity);
+            return;
+        }
+
+        var updates = toUpdate.computeIfAbsent(entity.getClass(), _ -> new ArrayList<>());
+        int index = indexOf(updates, id);
+        if (index >= 0) {
+            requireSameVersion(updates.get(index), entity);
+            if (!rereadUpdates.remove(id)) {
+                throw new IllegalStateException(describe(entity) + " is already registered for update"
+                    + "; read it through the batch again to build on its pending state");
+            }
+            updates.set(index, entity);
+        } else {
+            updates.add(-index - 1, entity);
+        }
+    }
+
+    /**
+     * Registers a balance change that is applied atomically at commit, without a prior read or version match.
+     * Adjustments of the same account are merged; {@code minBalance} guards the resulting balance.
+     */
+    public void adjustBalance(UUID accountId, long delta, long minBalance) {
+        toAdjust.merge(accountId, new BalanceAdjustment(accountId, delta, minBalance), BalanceAdjustment::merge);
+    }
+
+    public <T extends Entity> List<T> getInserts(Class<T> type) {
+        var inserts = toInsert.get(type);
+        return inserts == null ? List.of() : castAll(List.copyOf(inserts.values()));
+    }
+
+    /**
+     * Returns the pending updates of the type, sorted by id.
+     */
+    public <T extends Entity> List<T> getUpdates(Class<T> type) {
+        var updates = toUpdate.get(type);
+        return updates == null ? List.of() : castAll(updates);
+    }
+
+    /**
+     * Returns the pending inserts of all types, in the order in which they are flushed.
+     */
+    public List<Entity> getAllInserts() {
+        var inserts = new ArrayList<Entity>();
+        toInsert.values().forEach(entities -> inserts.addAll(entities.values()));
+        return inserts;
+    }
+
+    /**
+     * Returns the pending updates of all types, grouped by type in the order in which they are flushed.
+     */
+    public List<Entity> getAllUpdates() {
+        var updates = new ArrayList<Entity>();
+        toUpdate.values().forEach(updates::addAll);
+        return updates;
+    }
+
+    public Collection<BalanceAdjustment> getAdjustments() {
+        return toAdjust.values();
+    }
+
+    /**
+     * Returns the type of the pending write with the given id, or {@code null} if there is none.
+     */
+    public Class<?> entityTypeOf(UUID id) {
+        for (var entry : toUpdate.entrySet()) {
+            if (indexOf(entry.getValue(), id) >= 0) {
+                return entry.getKey();
+            }
+        }
+        return toAdjust.containsKey(id) ? Account.class : null;
+    }
+
+    /**
+     * Returns the type of every entity with a pending update or balance adjustment, keyed by id.
+     */
+    public Map<UUID, Class<?>> getWrittenTypes() {
+        Map<UUID, Class<?>> types = new HashMap<>();
+        toUpdate.forEach((type, entities) -> entities.forEach(entity -> types.put(entity.getId(), type)));
+        toAdjust.keySet().forEach(id -> types.put(id, Account.class));
+        return types;
     }
 
     public void executeInserts(RepositoryRegistry repositoryRegistry) {
-        toInsert.forEach(entity -> repositoryRegistry.getRepository(entity.getClass()).save(entity));
+        toInsert.forEach((type, entities) ->
+            repositoryRegistry.<Entity>getRepository(type).saveAll(List.copyOf(entities.values()))
+        );
     }
 
     public void executeUpdates(RepositoryRegistry repositoryRegistry) {
-        toUpdate.stream()
-            .sorted(comparing(Entity::getId))
-            .forEach(entity -> repositoryRegistry.getRepository(entity.getClass()).update(entity));
+        toUpdate.forEach((type, entities) -> repositoryRegistry.<Entity>getRepository(type).updateAll(entities));
     }
 
-}
+    public void executeAdjustments(RepositoryRegistry repositoryRegistry) {
+        if (!toAdjust.isEmpty()) {
+            repositoryRegistry.getBalanceRepository().adjustBalances(List.copyOf(toAdjust.values()));
+        }
+    }
+
+    private <T extends Entity> T pendingWrite(Class<T> type, UUID id) {
+        var updates = toUpdate.get(type);
+        if (updates != null) {
+            int index = indexOf(updates, id);
+            if (index >= 0) {
+                rereadUpdates.add(id);
+                return type.cast(updates.get(index));
+            }
+        }
+        var inserts = toInsert.get(type);
+        return inserts == null ? null : type.cast(inserts.get(id));
+    }
 
+    /**
+     * Binary search over entities sorted by id, without allocating.
+     *
+     * @return the index of the entity, or {@code -(insertion point) - 1} if there is none
+     */
+    private static int indexOf(List<Entity> entities, UUID id) {
+        int low = 0;
+        int high = entities.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = entities.get(middle).getId().compareTo(id);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void requireSameVersion(Entity registered, Entity entity) {
+        if (registered.getVersion() != entity.getVersion()) {
+            throw new IllegalStateException(describe(entity) + " at version " + entity.getVersion()
+                + " is already registered at version " + registered.getVersion()
+                + "; pending writes must derive from the state read in this unit of work");
+        }
+    }
+
+    private static String describe(Entity entity) {
+        return entity.getClass().getSimpleName() + " " + entity.getId();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Entity> List<T> castAll(List<Entity> entities) {
+        return (List<T>) (List<?>) entities;
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.springframework.stereotype.Component;
+
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.jooq.impl.DSL.inline;
+
+/**
+ * Writes the content of a prepared {@link Batch}, and its change events, inside the current transaction.
+ */
+@Component
+public class BatchFlusher {
+
+    private final RepositoryRegistry repositoryRegistry;
+    private final ChangeFeed changeFeed;
+    private final DSLContext dsl;
+
+    public BatchFlusher(RepositoryRegistry repositoryRegistry, ChangeFeed changeFeed, DSLContext dsl) {
+        this.repositoryRegistry = repositoryRegistry;
+        this.changeFeed = changeFeed;
+        this.dsl = dsl;
+    }
+
+    /**
+     * Makes the database cancel any following statement of the current transaction that is still running
+     * when the deadline passes. Does nothing without a deadline.
+     *
+     * @throws DeadlineExceededException if the deadline has passed already
+     */
+    public void limitStatementTime(RequestDeadline deadline) {
+        if (deadline == null) {
+            return;
+        }
+        // Zero would turn the timeout off
+        long millis = deadline.remaining().toMillis();
+        if (millis == 0) {
+            throw new DeadlineExceededException("The request deadline passed before the commit started");
+        }
+        dsl.execute("SET LOCAL statement_timeout = {0}", inline(millis));
+    }
+
+    public void flush(Batch batch) {
+        try {
+            batch.executeInserts(repositoryRegistry);
+            lockAccountsInIdOrder(batch);
+            batch.executeUpdates(repositoryRegistry);
+            batch.executeAdjustments(repositoryRegistry);
+            changeFeed.append(batch);
+        } catch (OptimisticLockException | InsufficientFundsException | DuplicateIdempotencyKeyException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to commit unit of work", e);
+        }
+    }
+
+    /**
+     * Versioned updates and adjustments each lock their account rows in id order, but one after the other,
+     * so a batch with both could lock a higher id before a lower one and deadlock with another such batch.
+     * It takes all of those row locks in a single id-ordered pass first.
+     */
+    private void lockAccountsInIdOrder(Batch batch) {
+        var updates = batch.getUpdates(Account.class);
+        var adjustments = batch.getAdjustments();
+        if (updates.isEmpty() || adjustments.isEmpty()) {
+            return;
+        }
+        var ids = new TreeSet<UUID>();
+        updates.forEach(account -> ids.add(account.id()));
+        adjustments.forEach(adjustment -> ids.add(adjustment.accountId()));
+        repositoryRegistry.<Account>getRepository(Account.class).lockByIds(ids);
+    }
+}
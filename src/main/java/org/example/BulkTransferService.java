@@ -0,0 +1,207 @@
+package org.example;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * Creates many transfers with few statements. Each unit of work nets its transfers into one guarded
+ * balance adjustment per touched account and writes the transfer rows with one multi-row insert.
+ * The guard applies to the netted balance, so a debit can be covered by a credit to the same account
+ * within the same unit of work.
+ */
+@Service
+public class BulkTransferService {
+
+    private static final Log logger = LogFactory.getLog(BulkTransferService.class);
+
+    private final UnitOfWork unitOfWork;
+    private final TransferProperties.Bulk properties;
+
+    public BulkTransferService(UnitOfWork unitOfWork, TransferProperties transferProperties) {
+        this.unitOfWork = unitOfWork;
+        this.properties = transferProperties.bulk();
+    }
+
+    public int getMaxAtomicTransfers() {
+        return properties.maxAtomicTransfers();
+    }
+
+    /**
+     * Commits the items in chunks of {@code transfers.bulk.chunk-size} as they are read. Each chunk commits
+     * or fails as a whole; an invalid item is rejected on its own and the rest of its chunk goes on.
+     * The returned stream is lazy: a chunk is only read and committed when its results are consumed.
+     */
+    public Stream<ItemResult> createInChunks(Iterator<Item> items) {
+        var chunks = new Iterator<List<ItemResult>>() {
+            private int nextIndex;
+
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public List<ItemResult> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var chunk = new ArrayList<Item>(properties.chunkSize());
+                while (chunk.size() < properties.chunkSize() && items.hasNext()) {
+                    chunk.add(items.next());
+                }
+                var results = createAll(chunk, nextIndex, false);
+                nextIndex += chunk.size();
+                return results;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+            .flatMap(List::stream);
+    }
+
+    /**
+     * Commits all items in one unit of work, or none of them. A single invalid item fails all others.
+     */
+    public List<ItemResult> createAtomically(List<Item> items) {
+        return createAll(items, 0, true);
+    }
+
+    private List<ItemResult> createAll(List<Item> items, int firstIndex, boolean rejectAllIfInvalid) {
+        var results = new ItemResult[items.size()];
+        var valid = new ArrayList<Item>(items.size());
+        var validPositions = new ArrayList<Integer>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            var error = validate(items.get(i));
+            if (error != null) {
+                results[i] = ItemResult.rejected(firstIndex + i, error);
+            } else {
+                valid.add(items.get(i));
+                validPositions.add(i);
+            }
+        }
+
+        if (rejectAllIfInvalid && valid.size() < items.size()) {
+            failAll(results, validPositions, firstIndex, "Not committed because another item was rejected");
+            return List.of(results);
+        }
+        if (valid.isEmpty()) {
+            return List.of(results);
+        }
+
+        try {
+            var transfers = unitOfWork.executeRetriable(nettedTransfersLogic(valid));
+            for (int i = 0; i < transfers.size(); i++) {
+                int position = validPositions.get(i);
+                results[position] = ItemResult.created(firstIndex + position, transfers.get(i).id());
+            }
+        } catch (RuntimeException e) {
+            failAll(results, validPositions, firstIndex, failureMessage(e));
+        }
+        return List.of(results);
+    }
+
+    private static Function<Batch, List<Transfer>> nettedTransfersLogic(List<Item> items) {
+        return batch -> {
+            var transfers = new ArrayList<Transfer>(items.size());
+            for (var item : items) {
+                var transfer = new Transfer(randomUUID(), item.fromAccountId(), item.toAccountId(), item.amount());
+                // Adjustments of the same account are merged by the batch into one netted, guarded change
+                batch.adjustBalance(item.fromAccountId(), -item.amount(), 0L);
+                batch.adjustBalance(item.toAccountId(), item.amount(), BalanceAdjustment.NO_LIMIT);
+                batch.insert(transfer);
+                transfers.add(transfer);
+            }
+            return transfers;
+        };
+    }
+
+    private static void failAll(ItemResult[] results, List<Integer> positions, int firstIndex, String error) {
+        for (int position : positions) {
+            results[position] = ItemResult.failed(firstIndex + position, error);
+        }
+    }
+
+    /**
+     * Tells the client why a unit of work was rolled back without exposing internals such as account ids or SQL;
+     * anything unexpected is logged instead.
+     */
+    private static String failureMessage(RuntimeException e) {
+        return switch (e) {
+            case InsufficientFundsException _ -> "Insufficient funds";
+            case OptimisticLockException _ -> "The accounts kept changing concurrently; retry later";
+            case DeadlineExceededException _ -> "The request deadline passed before the transfers were committed";
+            case OverloadedException _ -> "Too many transfers are in progress; retry later";
+            default -> {
+                logger.error("Failed to commit a unit of work of bulk transfers", e);
+                yield "Internal error";
+            }
+        };
+    }
+
+    private static String validate(Item item) {
+        if (item == null) {
+            return "Both fromAccountId and toAccountId are required";
+        }
+        return TransferService.validate(item.fromAccountId(), item.toAccountId(), item.amount());
+    }
+
+    public record Item(UUID fromAccountId, UUID toAccountId, long amount) {
+    }
+
+    /**
+     * Outcome of the item at {@code index} (zero-based, in request order).
+     */
+    public record ItemResult(int index, Status status, UUID transferId, String error) {
+
+        static ItemResult created(int index, UUID transferId) {
+            return new ItemResult(index, Status.CREATED, transferId, null);
+        }
+
+        static ItemResult rejected(int index, String error) {
+            return new ItemResult(index, Status.REJECTED, null, error);
+        }
+
+        static ItemResult failed(int index, String error) {
+            return new ItemResult(index, Status.FAILED, null, error);
+        }
+    }
+
+    public enum Status {
+        /**
+         * The transfer has been committed.
+         */
+        CREATED,
+        /**
+         * The item itself is invalid and was never attempted.
+         */
+        REJECTED,
+        /**
+         * The item is valid, but the unit of work it belonged to was rolled back.
+         */
+        FAILED
+    }
+
+    public enum Atomicity {
+        /**
+         * Commit per chunk; see {@link #createInChunks}.
+         */
+        CHUNK,
+        /**
+         * Commit everything or nothing; see {@link #createAtomically}.
+         */
+        ALL
+    }
+}
@@ -0,0 +1,32 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A write of a committed unit of work, numbered by {@code seq} in the order in which it became visible.
+ * {@code data} is the JSON of the entity as written, or of the balance adjustment.
+ */
+public record ChangeEvent(
+    long seq,
+    String entityType,
+    UUID entityId,
+    Operation operation,
+    @JsonRawValue String data,
+    OffsetDateTime createdAt
+) {
+
+    public enum Operation {
+        INSERT,
+        UPDATE,
+        ADJUST
+    }
+
+    /**
+     * A change event written at commit, before the sequencer numbers it.
+     */
+    public record Draft(String entityType, UUID entityId, Operation operation, String data) {
+    }
+}
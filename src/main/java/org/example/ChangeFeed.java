@@ -0,0 +1,170 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox of the writes of every committed unit of work. {@link BatchFlusher} appends one
+ * event per write in the same transaction; a sequencer, run by every node, then numbers events of finished
+ * transactions, so consumers can resume from a sequence number without ever missing an event.
+ * Events that every registered consumer has acknowledged are pruned.
+ */
+@Component
+public class ChangeFeed {
+
+    private final ChangeFeedRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ObjectWriter writer;
+    private final ChangeFeedProperties properties;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    public ChangeFeed(
+        ChangeFeedRepository repository,
+        TransactionTemplate transactionTemplate,
+        TaskScheduler taskScheduler,
+        ObjectMapper objectMapper,
+        ChangeFeedProperties properties
+    ) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = taskScheduler;
+        this.writer = objectMapper.writer();
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Appends one event per insert, update and balance adjustment of the batch. Must run in the transaction
+     * that flushes the batch, so that the events commit or roll back with it.
+     */
+    public void append(Batch batch) {
+        if (!properties.enabled()) {
+            return;
+        }
+        var drafts = new ArrayList<ChangeEvent.Draft>();
+        batch.getAllInserts().stream()
+            // Idempotency keys are bookkeeping of the request, not a change of the data
+            .filter(entity -> !(entity instanceof IdempotencyKey))
+            .forEach(entity -> drafts.add(draft(entity, ChangeEvent.Operation.INSERT)));
+        batch.getAllUpdates().forEach(entity -> drafts.add(draft(entity, ChangeEvent.Operation.UPDATE)));
+        batch.getAdjustments().forEach(adjustment -> drafts.add(new ChangeEvent.Draft(
+            Account.class.getSimpleName(),
+            adjustment.accountId(),
+            ChangeEvent.Operation.ADJUST,
+            toJson(adjustment)
+        )));
+        if (!drafts.isEmpty()) {
+            repository.appendAll(drafts);
+        }
+    }
+
+    /**
+     * Returns the events after {@code after}. If there are none yet, completes as soon as the sequencer
+     * numbers new events, or with an empty list after {@code wait}.
+     */
+    public CompletableFuture<List<ChangeEvent>> poll(long after, int limit, Duration wait) {
+        var events = repository.findAfter(after, limit);
+        if (!events.isEmpty() || wait.isZero() || !properties.enabled()) {
+            return CompletableFuture.completedFuture(events);
+        }
+        var waiter = new Waiter(after, limit, new CompletableFuture<>());
+        waiters.add(waiter);
+        return waiter.future().completeOnTimeout(List.of(), wait.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a consumer whose events are kept until it acknowledges them. It starts after {@code from},
+     * or after the latest event if {@code from} is {@code null}; registering again changes nothing.
+     */
+    public void register(String consumer, Long from) {
+        repository.registerConsumer(consumer, from != null ? from : repository.lastSequence());
+    }
+
+    /**
+     * @return {@code false} if the consumer is not registered
+     */
+    public boolean acknowledge(String consumer, long seq) {
+        return repository.acknowledge(consumer, seq);
+    }
+
+    /**
+     * @return {@code false} if the consumer is not registered
+     */
+    public boolean unregister(String consumer) {
+        return repository.unregisterConsumer(consumer);
+    }
+
+    public Duration getMaxWait() {
+        return properties.maxWait();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.enabled()) {
+            return;
+        }
+        taskScheduler.scheduleWithFixedDelay(this::sequence, properties.sequencerInterval());
+        taskScheduler.scheduleWithFixedDelay(this::prune, properties.pruneInterval());
+    }
+
+    void sequence() {
+        int batchSize = properties.sequencerBatchSize();
+        Integer assigned;
+        do {
+            assigned = transactionTemplate.execute(_ -> repository.assignSequence(batchSize));
+        } while (assigned != null && assigned == batchSize);
+        wakeWaiters();
+    }
+
+    void prune() {
+        repository.prune();
+    }
+
+    // Also runs when another node numbered the events, since it compares against the shared counter
+    private void wakeWaiters() {
+        waiters.removeIf(waiter -> waiter.future().isDone());
+        if (waiters.isEmpty()) {
+            return;
+        }
+        long last = repository.lastSequence();
+        for (var waiter : waiters) {
+            if (waiter.after() < last && waiters.remove(waiter)) {
+                waiter.future().complete(repository.findAfter(waiter.after(), waiter.limit()));
+            }
+        }
+    }
+
+    private ChangeEvent.Draft draft(Entity entity, ChangeEvent.Operation operation) {
+        return new ChangeEvent.Draft(entity.getClass().getSimpleName(), entity.getId(), operation, toJson(entity));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return writer.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Waiter(long after, int limit, CompletableFuture<List<ChangeEvent>> future) {
+    }
+}
@@ -0,0 +1,66 @@
+package org.example;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/changes")
+public class ChangeFeedController {
+
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Long-polls for the events after sequence number {@code after}, waiting up to {@code wait} seconds
+     * when there are none yet. Pass {@code next} of the response as {@code after} to continue.
+     */
+    @GetMapping
+    public CompletableFuture<ChangeBatch> getChanges(
+        @RequestParam(defaultValue = "0") long after,
+        @RequestParam(defaultValue = "100") int limit,
+        @RequestParam(defaultValue = "0") long wait
+    ) {
+        var maxWait = changeFeed.getMaxWait();
+        var timeout = Duration.ofSeconds(Math.clamp(wait, 0, maxWait.toSeconds()));
+        return changeFeed.poll(after, Math.clamp(limit, 1, MAX_PAGE_SIZE), timeout)
+            .thenApply(events -> new ChangeBatch(events, events.isEmpty() ? after : events.getLast().seq()));
+    }
+
+    @PutMapping("/consumers/{name}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void registerConsumer(@PathVariable String name, @RequestParam(required = false) Long from) {
+        changeFeed.register(name, from);
+    }
+
+    @PostMapping("/consumers/{name}/ack")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void acknowledge(@PathVariable String name, @RequestBody AckRequest request) {
+        if (!changeFeed.acknowledge(name, request.seq())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Consumer " + name + " is not registered");
+        }
+    }
+
+    @DeleteMapping("/consumers/{name}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void unregisterConsumer(@PathVariable String name) {
+        if (!changeFeed.unregister(name)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Consumer " + name + " is not registered");
+        }
+    }
+
+    public record ChangeBatch(List<ChangeEvent> events, long next) {
+    }
+
+    public record AckRequest(long seq) {
+    }
+}
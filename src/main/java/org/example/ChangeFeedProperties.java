@@ -0,0 +1,19 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link ChangeFeed}. {@code maxWait} should stay below the servlet container's async timeout.
+ */
+@ConfigurationProperties("changes")
+public record ChangeFeedProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("50ms") Duration sequencerInterval,
+    @DefaultValue("10000") int sequencerBatchSize,
+    @DefaultValue("25s") Duration maxWait,
+    @DefaultValue("1m") Duration pruneInterval
+) {
+}
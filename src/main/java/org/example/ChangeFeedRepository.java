@@ -0,0 +1,173 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+import static org.example.jooq.Tables.CHANGE_CONSUMER;
+import static org.example.jooq.Tables.CHANGE_EVENT;
+import static org.example.jooq.Tables.CHANGE_SEQUENCE;
+import static org.jooq.impl.DSL.coalesce;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.greatest;
+import static org.jooq.impl.DSL.min;
+import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.orderBy;
+import static org.jooq.impl.DSL.row;
+import static org.jooq.impl.DSL.rowNumber;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.val;
+
+@Repository
+public class ChangeFeedRepository {
+
+    // Four bind values per event stay well below PostgreSQL's limit of 65,535 per statement
+    private static final int INSERT_CHUNK = 5_000;
+    // Transactions with a lower id have finished; none of them can still add events
+    private static final Field<Long> OLDEST_RUNNING_TX =
+        field("pg_snapshot_xmin(pg_current_snapshot())::text::bigint", Long.class);
+
+    private final DSLContext dsl;
+
+    public ChangeFeedRepository(DSLContext dsl) {
+        this.dsl = dsl;
+    }
+
+    /**
+     * Appends unnumbered events in the current transaction; the column default records the transaction id.
+     */
+    public void appendAll(List<ChangeEvent.Draft> drafts) {
+        for (int from = 0; from < drafts.size(); from += INSERT_CHUNK) {
+            var chunk = drafts.subList(from, Math.min(from + INSERT_CHUNK, drafts.size()));
+            dsl.insertInto(
+                    CHANGE_EVENT,
+                    CHANGE_EVENT.ENTITY_TYPE,
+                    CHANGE_EVENT.ENTITY_ID,
+                    CHANGE_EVENT.OPERATION,
+                    CHANGE_EVENT.DATA
+                )
+                .valuesOfRows(chunk.stream()
+                    .map(draft -> row(draft.entityType(), draft.entityId(), draft.operation().name(), draft.data()))
+                    .toList())
+                .execute();
+        }
+    }
+
+    /**
+     * Numbers up to {@code limit} events of finished transactions, ordered by transaction and insertion order,
+     * continuing from the last number handed out. Must run inside a transaction; concurrent sequencers
+     * queue on the counter row, and each statement after the lock sees what the previous one committed.
+     *
+     * @return the number of events numbered
+     */
+    public int assignSequence(int limit) {
+        long last = dsl.select(CHANGE_SEQUENCE.LAST_SEQ)
+            .from(CHANGE_SEQUENCE)
+            .forUpdate()
+            .fetchSingle(CHANGE_SEQUENCE.LAST_SEQ);
+
+        var ready = name("ready").fields("id", "position").as(
+            select(CHANGE_EVENT.ID, rowNumber().over(orderBy(CHANGE_EVENT.TX_ID, CHANGE_EVENT.ID)))
+                .from(CHANGE_EVENT)
+                .where(CHANGE_EVENT.SEQ.isNull())
+                .and(CHANGE_EVENT.TX_ID.lt(OLDEST_RUNNING_TX))
+                .orderBy(CHANGE_EVENT.TX_ID, CHANGE_EVENT.ID)
+                .limit(limit)
+        );
+        int assigned = dsl.with(ready)
+            .update(CHANGE_EVENT)
+            .set(CHANGE_EVENT.SEQ, ready.field("position", Long.class).plus(last))
+            .from(ready)
+            .where(CHANGE_EVENT.ID.eq(ready.field("id", Long.class)))
+            .execute();
+
+        if (assigned > 0) {
+            dsl.update(CHANGE_SEQUENCE).set(CHANGE_SEQUENCE.LAST_SEQ, last + assigned).execute();
+        }
+        return assigned;
+    }
+
+    public long lastSequence() {
+        return dsl.select(CHANGE_SEQUENCE.LAST_SEQ).from(CHANGE_SEQUENCE).fetchSingle(CHANGE_SEQUENCE.LAST_SEQ);
+    }
+
+    /**
+     * Returns up to {@code limit} numbered events after the given sequence number, in sequence order.
+     */
+    public List<ChangeEvent> findAfter(long after, int limit) {
+        return dsl.select(
+                CHANGE_EVENT.SEQ,
+                CHANGE_EVENT.ENTITY_TYPE,
+                CHANGE_EVENT.ENTITY_ID,
+                CHANGE_EVENT.OPERATION,
+                CHANGE_EVENT.DATA,
+                CHANGE_EVENT.CREATED_AT
+            )
+            .from(CHANGE_EVENT)
+            .where(CHANGE_EVENT.SEQ.gt(after))
+            .orderBy(CHANGE_EVENT.SEQ)
+            .limit(limit)
+            .fetch(record -> new ChangeEvent(
+                record.value1(),
+                record.value2(),
+                record.value3(),
+                ChangeEvent.Operation.valueOf(record.value4()),
+                record.value5(),
+                record.value6()
+            ));
+    }
+
+    /**
+     * Registers a consumer that has seen everything up to {@code ackedSeq}; an existing consumer is left as is.
+     */
+    public void registerConsumer(String name, long ackedSeq) {
+        dsl.insertInto(CHANGE_CONSUMER, CHANGE_CONSUMER.NAME, CHANGE_CONSUMER.ACKED_SEQ)
+            .values(name, ackedSeq)
+            .onConflictDoNothing()
+            .execute();
+    }
+
+    /**
+     * Moves the acknowledged position of a consumer forward; it never moves back.
+     *
+     * @return {@code false} if the consumer is not registered
+     */
+    public boolean acknowledge(String name, long seq) {
+        return dsl.update(CHANGE_CONSUMER)
+            .set(CHANGE_CONSUMER.ACKED_SEQ, greatest(CHANGE_CONSUMER.ACKED_SEQ, val(seq)))
+            .where(CHANGE_CONSUMER.NAME.eq(name))
+            .execute() > 0;
+    }
+
+    /**
+     * @return the acknowledged position of the consumer, or {@code null} if it is not registered
+     */
+    public Long findAcknowledged(String name) {
+        return dsl.select(CHANGE_CONSUMER.ACKED_SEQ)
+            .from(CHANGE_CONSUMER)
+            .where(CHANGE_CONSUMER.NAME.eq(name))
+            .fetchOne(CHANGE_CONSUMER.ACKED_SEQ);
+    }
+
+    public boolean unregisterConsumer(String name) {
+        return dsl.deleteFrom(CHANGE_CONSUMER).where(CHANGE_CONSUMER.NAME.eq(name)).execute() > 0;
+    }
+
+    /**
+     * Deletes the events that every registered consumer has acknowledged, or all numbered events
+     * if no consumer is registered.
+     *
+     * @return the number of events deleted
+     */
+    public int prune() {
+        var acknowledgedByAll = coalesce(
+            select(min(CHANGE_CONSUMER.ACKED_SEQ)).from(CHANGE_CONSUMER).asField(),
+            select(CHANGE_SEQUENCE.LAST_SEQ).from(CHANGE_SEQUENCE).asField()
+        );
+        return dsl.deleteFrom(CHANGE_EVENT)
+            .where(CHANGE_EVENT.SEQ.le(acknowledgedByAll))
+            .execute();
+    }
+}
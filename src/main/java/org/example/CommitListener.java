@@ -0,0 +1,14 @@
+package org.example;
+
+/**
+ * Callbacks invoked by {@link UnitOfWork} after each commit attempt. Every bean implementing this
+ * interface is registered automatically.
+ */
+public interface CommitListener {
+
+    default void onCommitted(Batch batch) {
+    }
+
+    default void onConflict(Batch batch, OptimisticLockException conflict) {
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the units of work in flight on this node, and adapts the cap to commit latency, so that when the database
+ * slows down new callers are turned away at once instead of queueing for connections until they time out.
+ * <p>
+ * The cap follows a latency gradient. A short average of recent commit latencies is compared with a long one.
+ * While the short one stays within {@code tolerance} times the long one, the cap grows by about its square root
+ * per sample. Beyond that it shrinks in proportion, by at most half per sample, and by at most {@code smoothing}
+ * of the change at once. The cap only grows while at least half of it is used, since idle capacity says nothing
+ * about what the database would take.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    // About the last 10 and the last 500 commits
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.002;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    // Guarded by this
+    private double limit;
+    private double shortLatency;
+    private double longLatency;
+
+    private volatile int currentLimit;
+
+    public ConcurrencyLimiter(UnitOfWorkProperties properties) {
+        var limiter = properties.limiter();
+        this.enabled = limiter.enabled();
+        this.minLimit = limiter.minLimit();
+        this.maxLimit = limiter.maxLimit();
+        this.tolerance = limiter.tolerance();
+        this.smoothing = limiter.smoothing();
+        this.limit = Math.clamp(limiter.initialLimit(), minLimit, maxLimit);
+        this.currentLimit = (int) limit;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits a unit of work, which must close the returned permit once it is done.
+     *
+     * @throws OverloadedException if as many units of work as the current limit are in flight
+     */
+    public Permit acquire() {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        while (true) {
+            int current = inFlight.get();
+            int allowed = currentLimit;
+            if (current >= allowed) {
+                rejected.increment();
+                throw new OverloadedException(allowed);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return inFlight::decrementAndGet;
+            }
+        }
+    }
+
+    /**
+     * Adapts the limit to the latency of one commit, including the time it waited for a connection or a group.
+     */
+    public synchronized void onCommit(long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+        shortLatency += SHORT_WEIGHT * (latencyNanos - shortLatency);
+        longLatency += LONG_WEIGHT * (latencyNanos - longLatency);
+
+        double gradient = Math.clamp(tolerance * longLatency / shortLatency, 0.5, 1.0);
+        if (gradient == 1.0 && inFlight.get() < limit / 2) {
+            return;
+        }
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.clamp(limit + smoothing * (target - limit), minLimit, maxLimit);
+        currentLimit = (int) limit;
+    }
+
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public interface Permit extends AutoCloseable {
+
+        Permit NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+}
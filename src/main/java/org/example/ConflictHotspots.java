@@ -0,0 +1,67 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded top-K sketch of the ids that conflict most, using the Space-Saving algorithm:
+ * at most {@code capacity} ids are tracked, and a new id replaces the one with the lowest count,
+ * inheriting that count as its possible overestimation.
+ */
+public class ConflictHotspots {
+
+    private final int capacity;
+    private final Map<UUID, Counter> counters;
+
+    public ConflictHotspots(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public synchronized void record(UUID id) {
+        var counter = counters.get(id);
+        if (counter != null) {
+            counter.count++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(id, new Counter(1, 0));
+            return;
+        }
+
+        var smallest = counters.entrySet().stream()
+            .min(Map.Entry.comparingByValue(Comparator.comparingLong(c -> c.count)))
+            .orElseThrow();
+        counters.remove(smallest.getKey());
+        var evicted = smallest.getValue();
+        counters.put(id, new Counter(evicted.count + 1, evicted.count));
+    }
+
+    public synchronized List<Hotspot> top(int limit) {
+        var hotspots = new ArrayList<Hotspot>(counters.size());
+        counters.forEach((id, counter) -> hotspots.add(new Hotspot(id, counter.count, counter.error)));
+        hotspots.sort(Comparator.comparingLong(Hotspot::conflicts).reversed());
+        return hotspots.subList(0, Math.min(limit, hotspots.size()));
+    }
+
+    /**
+     * An id with its estimated number of conflicts; the true number is at least {@code conflicts - maxOverestimation}.
+     */
+    public record Hotspot(UUID id, long conflicts, long maxOverestimation) {
+    }
+
+    private static final class Counter {
+
+        private long count;
+        private final long error;
+
+        private Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exponentially decaying conflict rate of the ids that recently failed a version check.
+ * An id whose share of conflicting attempts rises above the configured threshold is reported as hot,
+ * and {@link UnitOfWork} locks it up front instead of validating its version at commit.
+ * Attempts on the pessimistic path never conflict, so the rate of a hot id falls again as they commit;
+ * it goes back to the optimistic path once the rate drops below half of the threshold.
+ */
+@Component
+public class ConflictRates implements CommitListener {
+
+    // Below this many recent attempts the rate of an id is too noisy to act on
+    private static final double MIN_ATTEMPTS = 4;
+    private static final int MAX_TRACKED = 10_000;
+
+    private final boolean enabled;
+    private final double threshold;
+    private final double halfLifeNanos;
+    private final Map<UUID, Rate> rates = new ConcurrentHashMap<>();
+
+    public ConflictRates(UnitOfWorkProperties properties) {
+        this.enabled = properties.adaptive().enabled();
+        this.threshold = properties.adaptive().conflictRateThreshold();
+        this.halfLifeNanos = properties.adaptive().halfLife().toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether any of the given ids conflicts often enough to be locked pessimistically.
+     */
+    public boolean anyHot(Collection<UUID> ids) {
+        if (!enabled || rates.isEmpty()) {
+            return false;
+        }
+        for (var id : ids) {
+            var rate = rates.get(id);
+            if (rate != null && rate.isHot()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current share of attempts on the id that conflicted, or zero if it is not tracked.
+     */
+    public double rateOf(UUID id) {
+        var rate = rates.get(id);
+        return rate == null ? 0 : rate.current(System.nanoTime());
+    }
+
+    @Override
+    public void onCommitted(Batch batch) {
+        if (!enabled || rates.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (var id : batch.getWrittenTypes().keySet()) {
+            var rate = rates.get(id);
+            if (rate != null) {
+                rate.record(now, false);
+            }
+        }
+    }
+
+    @Override
+    public void onConflict(Batch batch, OptimisticLockException conflict) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (var id : conflict.getConflictingIds()) {
+            if (batch.entityTypeOf(id) != null) {
+                rates.computeIfAbsent(id, _ -> new Rate(now)).record(now, true);
+            }
+        }
+        if (rates.size() > MAX_TRACKED) {
+            rates.values().removeIf(rate -> rate.isIdle(now));
+        }
+    }
+
+    private final class Rate {
+
+        private double attempts;
+        private double conflicts;
+        private long updatedAt;
+        private boolean hot;
+
+        private Rate(long now) {
+            this.updatedAt = now;
+        }
+
+        synchronized void record(long now, boolean conflict) {
+            decay(now);
+            attempts++;
+            if (conflict) {
+                conflicts++;
+            }
+            double rate = conflicts / attempts;
+            // Leave the pessimistic path only well below the threshold, so that an id does not flap between the two
+            hot = attempts >= MIN_ATTEMPTS && (hot ? rate >= threshold / 2 : rate > threshold);
+        }
+
+        synchronized boolean isHot() {
+            return hot;
+        }
+
+        synchronized double current(long now) {
+            decay(now);
+            return attempts == 0 ? 0 : conflicts / attempts;
+        }
+
+        synchronized boolean isIdle(long now) {
+            decay(now);
+            return attempts < 1;
+        }
+
+        private void decay(long now) {
+            double factor = Math.pow(0.5, (now - updatedAt) / halfLifeNanos);
+            attempts *= factor;
+            conflicts *= factor;
+            updatedAt = now;
+        }
+    }
+}
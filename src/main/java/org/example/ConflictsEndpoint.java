@@ -0,0 +1,28 @@
+package org.example;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the ids that caused the most optimistic lock conflicts.
+ */
+@Component
+@Endpoint(id = "conflicts")
+public class ConflictsEndpoint {
+
+    private static final int TOP = 20;
+
+    private final UnitOfWorkMetrics metrics;
+
+    public ConflictsEndpoint(UnitOfWorkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @ReadOperation
+    public List<ConflictHotspots.Hotspot> hotspots() {
+        return metrics.getHotspots().top(TOP);
+    }
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues units of work on this node that declare the same ids, so that only one of them at a time
+ * races for the optimistic commit. Each id has its own fair lock, created on demand and dropped when
+ * no longer used, so units of work on unrelated ids never block each other. Ids are locked in sorted
+ * order, which rules out deadlocks between units of work declaring overlapping sets of ids.
+ * The version check at commit still guards against writers on other nodes.
+ * <p>
+ * A unit of work waits at most {@code maxWait}, or until its deadline if that comes first, so that a queue
+ * behind a hot id sheds callers instead of growing without bound.
+ */
+@Component
+public class ContentionManager {
+
+    private final boolean enabled;
+    private final Duration maxWait;
+    private final Map<UUID, KeyLock> locks = new ConcurrentHashMap<>();
+    private final LongAdder admissions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public ContentionManager(UnitOfWorkProperties properties) {
+        this.enabled = properties.contention().enabled();
+        this.maxWait = properties.contention().maxWait();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits until no other unit of work on this node holds any of the given ids.
+     * The returned admission must be closed to let the next one in.
+     *
+     * @param deadline the deadline of the calling request, or {@code null} if it has none
+     * @throws DeadlineExceededException if the deadline passes first
+     * @throws OverloadedException if the ids are not free within {@code maxWait}
+     */
+    public Admission admit(Collection<UUID> ids, RequestDeadline deadline) {
+        if (!enabled || ids.isEmpty()) {
+            return Admission.NONE;
+        }
+
+        var sortedIds = List.copyOf(new TreeSet<>(ids));
+        boolean deadlineFirst = deadline != null && deadline.remaining().compareTo(maxWait) < 0;
+        var wait = deadlineFirst ? deadline.remaining() : maxWait;
+        long start = System.nanoTime();
+        long waitUntil = start + wait.toNanos();
+        int acquired = 0;
+        try {
+            for (var id : sortedIds) {
+                var keyLock = locks.compute(id, (_, existing) -> {
+                    var lock = existing == null ? new KeyLock() : existing;
+                    lock.users++;
+                    return lock;
+                });
+                boolean locked;
+                try {
+                    locked = keyLock.lock.tryLock(waitUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    release(id);
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for contended ids " + sortedIds, e);
+                }
+                if (!locked) {
+                    release(id);
+                    timeouts.increment();
+                    throw deadlineFirst
+                        ? new DeadlineExceededException("Deadline passed while waiting for contended ids " + sortedIds)
+                        : new OverloadedException("Waited longer than " + maxWait + " for contended ids " + sortedIds);
+                }
+                acquired++;
+            }
+        } catch (RuntimeException e) {
+            unlock(sortedIds, acquired);
+            throw e;
+        } finally {
+            admissions.increment();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        return () -> unlock(sortedIds, sortedIds.size());
+    }
+
+    public long getAdmissions() {
+        return admissions.sum();
+    }
+
+    public double getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    private void unlock(List<UUID> sortedIds, int acquired) {
+        for (int i = acquired - 1; i >= 0; i--) {
+            var id = sortedIds.get(i);
+            locks.get(id).lock.unlock();
+            release(id);
+        }
+    }
+
+    private void release(UUID id) {
+        locks.computeIfPresent(id, (_, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    public interface Admission extends AutoCloseable {
+
+        Admission NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    private static final class KeyLock {
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int users;
+    }
+}
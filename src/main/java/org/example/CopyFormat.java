@@ -0,0 +1,33 @@
+package org.example;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Row formats of bulk imports and exports, as PostgreSQL's {@code COPY} reads and writes them.
+ */
+public enum CopyFormat {
+    /**
+     * CSV with a header line, which an import skips without checking it.
+     */
+    CSV("(FORMAT csv, HEADER true)", MediaType.parseMediaType("text/csv")),
+    /**
+     * PostgreSQL's binary copy format; columns must have exactly the types of the table.
+     */
+    BINARY("(FORMAT binary)", MediaType.APPLICATION_OCTET_STREAM);
+
+    private final String options;
+    private final MediaType mediaType;
+
+    CopyFormat(String options, MediaType mediaType) {
+        this.options = options;
+        this.mediaType = mediaType;
+    }
+
+    String options() {
+        return options;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+}
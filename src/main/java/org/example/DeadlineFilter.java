@@ -0,0 +1,51 @@
+package org.example;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Starts the deadline of a request when it arrives, from the {@code unit-of-work.deadline.header} sent by the
+ * caller or the configured default, and keeps it current while the request is handled on this thread.
+ * Asynchronous units of work take it along when they are started.
+ */
+@Component
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    private final String header;
+    private final Duration defaultTimeout;
+
+    public DeadlineFilter(UnitOfWorkProperties properties) {
+        this.header = properties.deadline().header();
+        this.defaultTimeout = properties.deadline().defaultTimeout();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        var value = request.getHeader(header);
+        Duration timeout;
+        try {
+            timeout = value == null ? defaultTimeout : DurationStyle.detectAndParse(value, ChronoUnit.MILLIS);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid " + header + " header: " + value);
+            return;
+        }
+        if (value == null && timeout.isZero()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try (var _ = RequestDeadline.enter(RequestDeadline.after(timeout))) {
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Exception thrown at commit when another transaction has already stored one of the idempotency keys.
+ * The unit of work is rolled back, and the caller answers with the transfer stored for the key instead.
+ */
+public class DuplicateIdempotencyKeyException extends RuntimeException {
+
+    private final Set<UUID> ids;
+
+    public DuplicateIdempotencyKeyException(Set<UUID> ids) {
+        super("Idempotency keys have already been used: " + ids);
+        this.ids = Set.copyOf(ids);
+    }
+
+    public Set<UUID> getIds() {
+        return ids;
+    }
+}
@@ -5,5 +5,12 @@ import java.util.UUID;
 public interface Entity {
 
     UUID getId();
+
+    /**
+     * The version a versioned update expects to find; {@code 0} for entities that are not versioned.
+     */
+    default long getVersion() {
+        return 0L;
+    }
 }
 
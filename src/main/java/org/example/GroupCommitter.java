@@ -0,0 +1,203 @@
+package org.example;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges batches committed by concurrent callers into a single database transaction.
+ * Batches are collected for up to {@code window} or until {@code maxBatches} are queued, then flushed
+ * one after another by a single thread. Each batch runs under its own savepoint, so a failing batch
+ * is rolled back and reported to its caller alone while the rest of the group commits. Batches whose request
+ * deadline passed while they were queued are dropped, and the statements of a group are bounded by the latest
+ * deadline in it.
+ */
+@Component
+public class GroupCommitter {
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatches;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchFlusher batchFlusher;
+    private final UnitOfWorkMetrics metrics;
+    private final BlockingQueue<PendingBatch> queue = new LinkedBlockingQueue<>();
+    private final Thread flusherThread;
+
+    private volatile boolean running = true;
+
+    public GroupCommitter(
+        TransactionTemplate transactionTemplate,
+        BatchFlusher batchFlusher,
+        UnitOfWorkMetrics metrics,
+        UnitOfWorkProperties properties
+    ) {
+        this.enabled = properties.groupCommit().enabled();
+        this.windowNanos = properties.groupCommit().window().toNanos();
+        this.maxBatches = properties.groupCommit().maxBatches();
+        this.transactionTemplate = transactionTemplate;
+        this.batchFlusher = batchFlusher;
+        this.metrics = metrics;
+        this.flusherThread = enabled
+            ? Thread.ofPlatform().name("group-commit").daemon().start(this::run)
+            : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param deadline the deadline of the request committing the batch, or {@code null} if it has none
+     */
+    public void commit(Batch batch, RequestDeadline deadline) {
+        if (!running) {
+            throw stopped();
+        }
+        var future = new CompletableFuture<Void>();
+        queue.add(new PendingBatch(batch, deadline, future));
+        if (!running) {
+            // Stopped after the check above, possibly without seeing this batch in the queue
+            failQueued();
+        }
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops flushing. Callers whose batches are still queued, or collected for a group that has not been
+     * flushed yet, fail instead of waiting for a commit that will not come.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (flusherThread != null) {
+            flusherThread.interrupt();
+        }
+        failQueued();
+    }
+
+    private void run() {
+        var group = new ArrayList<PendingBatch>(maxBatches);
+        while (running) {
+            try {
+                collect(group);
+                flush(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                var shutdown = stopped();
+                group.forEach(pending -> pending.future().completeExceptionally(shutdown));
+                break;
+            } finally {
+                group.clear();
+            }
+        }
+        failQueued();
+    }
+
+    private void failQueued() {
+        var shutdown = stopped();
+        PendingBatch pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(shutdown);
+        }
+    }
+
+    private static IllegalStateException stopped() {
+        return new IllegalStateException("Group commit has been stopped");
+    }
+
+    private void collect(List<PendingBatch> group) throws InterruptedException {
+        group.add(queue.take());
+        long deadline = System.nanoTime() + windowNanos;
+        while (group.size() < maxBatches) {
+            var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+        }
+    }
+
+    private void flush(List<PendingBatch> group) {
+        group.removeIf(pending -> {
+            if (pending.deadline() == null || !pending.deadline().isExpired()) {
+                return false;
+            }
+            pending.future().completeExceptionally(
+                new DeadlineExceededException("The request deadline passed while waiting for a group commit")
+            );
+            return true;
+        });
+        if (group.isEmpty()) {
+            return;
+        }
+
+        metrics.recordGroupSize(group.size());
+        var deadline = latestDeadline(group);
+        List<PendingBatch> committed = new ArrayList<>(group.size());
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                batchFlusher.limitStatementTime(deadline);
+                for (var pending : group) {
+                    if (flushUnderSavepoint(status, pending)) {
+                        committed.add(pending);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // Futures of batches that already failed on their own are left untouched
+            group.forEach(pending -> pending.future().completeExceptionally(e));
+            return;
+        } finally {
+            metrics.recordLockWindow(System.nanoTime() - start);
+        }
+        committed.forEach(pending -> pending.future().complete(null));
+    }
+
+    private boolean flushUnderSavepoint(TransactionStatus status, PendingBatch pending) {
+        var savepoint = status.createSavepoint();
+        try {
+            batchFlusher.flush(pending.batch());
+            status.releaseSavepoint(savepoint);
+            return true;
+        } catch (RuntimeException e) {
+            status.rollbackToSavepoint(savepoint);
+            pending.future().completeExceptionally(e);
+            return false;
+        }
+    }
+
+    // The group may run for as long as the most patient of its callers waits, or unbounded if one has no deadline
+    private static RequestDeadline latestDeadline(List<PendingBatch> group) {
+        RequestDeadline latest = null;
+        for (var pending : group) {
+            if (pending.deadline() == null) {
+                return null;
+            }
+            if (latest == null || latest.isBefore(pending.deadline())) {
+                latest = pending.deadline();
+            }
+        }
+        return latest;
+    }
+
+    private record PendingBatch(Batch batch, RequestDeadline deadline, CompletableFuture<Void> future) {
+    }
+}
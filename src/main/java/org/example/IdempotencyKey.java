@@ -0,0 +1,37 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Records that the transfer was created for a client's {@code Idempotency-Key}. The id is derived from the key,
+ * so that the primary key lets only one transfer be created per key.
+ */
+public record IdempotencyKey(UUID id, UUID transferId, UUID fromAccountId, UUID toAccountId, long amount)
+    implements Entity {
+
+    public static UUID idOf(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static IdempotencyKey of(UUID id, Transfer transfer) {
+        return new IdempotencyKey(id, transfer.id(), transfer.fromAccountId(), transfer.toAccountId(), transfer.amount());
+    }
+
+    /**
+     * Returns the transfer created for the key, provided the repeated request asks for the same transfer.
+     *
+     * @throws IdempotencyKeyReusedException if the key has been used for a different transfer
+     */
+    public Transfer replay(UUID fromAccountId, UUID toAccountId, long amount) {
+        if (!this.fromAccountId.equals(fromAccountId) || !this.toAccountId.equals(toAccountId) || this.amount != amount) {
+            throw new IdempotencyKeyReusedException();
+        }
+        return new Transfer(transferId, fromAccountId, toAccountId, amount);
+    }
+
+    @Override
+    public UUID getId() {
+        return id;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Records;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toCollection;
+import static org.example.jooq.Tables.IDEMPOTENCY_KEY;
+import static org.jooq.impl.DSL.row;
+
+@Repository
+public class IdempotencyKeyRepository implements org.example.Repository<IdempotencyKey> {
+
+    private final DSLContext dsl;
+
+    public IdempotencyKeyRepository(DSLContext dsl) {
+        this.dsl = dsl;
+    }
+
+    @Override
+    public IdempotencyKey save(IdempotencyKey key) {
+        saveAll(List.of(key));
+        return key;
+    }
+
+    /**
+     * Stores all keys. A key stored by a concurrent transaction makes this wait for it; if it commits,
+     * the key is reported instead of failing the transaction on the unique violation.
+     *
+     * @throws DuplicateIdempotencyKeyException if any of the keys has been stored already
+     */
+    @Override
+    public void saveAll(List<IdempotencyKey> keys) {
+        var ids = keys.stream().map(IdempotencyKey::id).collect(toCollection(HashSet::new));
+        var insertedIds = dsl.insertInto(
+                IDEMPOTENCY_KEY,
+                IDEMPOTENCY_KEY.ID,
+                IDEMPOTENCY_KEY.TRANSFER_ID,
+                IDEMPOTENCY_KEY.FROM_ACCOUNT_ID,
+                IDEMPOTENCY_KEY.TO_ACCOUNT_ID,
+                IDEMPOTENCY_KEY.AMOUNT
+            )
+            .valuesOfRows(keys.stream()
+                .map(key -> row(key.id(), key.transferId(), key.fromAccountId(), key.toAccountId(), key.amount()))
+                .toList())
+            .onConflictDoNothing()
+            .returning(IDEMPOTENCY_KEY.ID)
+            .fetchSet(IDEMPOTENCY_KEY.ID);
+
+        if (insertedIds.size() != ids.size()) {
+            ids.removeAll(insertedIds);
+            throw new DuplicateIdempotencyKeyException(ids);
+        }
+    }
+
+    @Override
+    public void update(IdempotencyKey key) {
+        throw new UnsupportedOperationException("Idempotency keys are immutable");
+    }
+
+    /**
+     * @return the key and when it was stored, or {@code null} if it has not been
+     */
+    public StoredKey findById(UUID id) {
+        return dsl.select(
+                IDEMPOTENCY_KEY.ID,
+                IDEMPOTENCY_KEY.TRANSFER_ID,
+                IDEMPOTENCY_KEY.FROM_ACCOUNT_ID,
+                IDEMPOTENCY_KEY.TO_ACCOUNT_ID,
+                IDEMPOTENCY_KEY.AMOUNT,
+                IDEMPOTENCY_KEY.CREATED_AT
+            )
+            .from(IDEMPOTENCY_KEY)
+            .where(IDEMPOTENCY_KEY.ID.eq(id))
+            .fetchOne(Records.mapping((keyId, transferId, fromAccountId, toAccountId, amount, createdAt) ->
+                new StoredKey(new IdempotencyKey(keyId, transferId, fromAccountId, toAccountId, amount), createdAt)
+            ));
+    }
+
+    /**
+     * @return the number of keys deleted
+     */
+    public int deleteCreatedBefore(OffsetDateTime before) {
+        return dsl.deleteFrom(IDEMPOTENCY_KEY).where(IDEMPOTENCY_KEY.CREATED_AT.lt(before)).execute();
+    }
+
+    public record StoredKey(IdempotencyKey key, OffsetDateTime createdAt) {
+    }
+}
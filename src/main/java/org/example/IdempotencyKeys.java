@@ -0,0 +1,118 @@
+package org.example;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Looks up the transfers created for idempotency keys. Keys committed or looked up on this node are kept
+ * in a bounded LRU split into segments, so that a client retrying the same request is answered
+ * without a database round trip. Keys are immutable once committed, but are deleted after {@code retention};
+ * cached entries older than that count as misses, so that the cache does not outlive the database.
+ */
+@Component
+public class IdempotencyKeys implements CommitListener {
+
+    private static final int SEGMENTS = 16;
+
+    private final IdempotencyKeyRepository repository;
+    private final TaskScheduler taskScheduler;
+    private final TransferProperties.Idempotency properties;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public IdempotencyKeys(
+        IdempotencyKeyRepository repository,
+        TaskScheduler taskScheduler,
+        TransferProperties transferProperties
+    ) {
+        this.repository = repository;
+        this.taskScheduler = taskScheduler;
+        this.properties = transferProperties.idempotency();
+        int segmentSize = Math.max(1, properties.cacheSize() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * @return the key stored from a recent request on this node, or {@code null}
+     */
+    public IdempotencyKey findCached(UUID id) {
+        var segment = segmentFor(id);
+        synchronized (segment) {
+            var entry = segment.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.createdAt().isBefore(OffsetDateTime.now().minus(properties.retention()))) {
+                segment.remove(id);
+                return null;
+            }
+            return entry.key();
+        }
+    }
+
+    /**
+     * @return the stored key, from the cache or the database, or {@code null} if it has not been used
+     */
+    public IdempotencyKey find(UUID id) {
+        var key = findCached(id);
+        if (key == null) {
+            var stored = repository.findById(id);
+            if (stored != null) {
+                key = stored.key();
+                put(stored);
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public void onCommitted(Batch batch) {
+        var committedAt = OffsetDateTime.now();
+        for (var key : batch.getInserts(IdempotencyKey.class)) {
+            put(new IdempotencyKeyRepository.StoredKey(key, committedAt));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::prune, properties.pruneInterval());
+    }
+
+    void prune() {
+        repository.deleteCreatedBefore(OffsetDateTime.now().minus(properties.retention()));
+    }
+
+    private void put(IdempotencyKeyRepository.StoredKey stored) {
+        var segment = segmentFor(stored.key().id());
+        synchronized (segment) {
+            segment.put(stored.key().id(), stored);
+        }
+    }
+
+    private Segment segmentFor(UUID id) {
+        return segments[(id.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    private static class Segment extends LinkedHashMap<UUID, IdempotencyKeyRepository.StoredKey> {
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, IdempotencyKeyRepository.StoredKey> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Entities read by a unit of work, keyed by id. Each entity is loaded at most once, and entities
+ * that are not cached yet are loaded together with one multi-get query per type.
+ * After an optimistic lock conflict only the conflicting entities are evicted, so a retry
+ * re-reads just those.
+ */
+public class IdentityMap {
+
+    private final RepositoryRegistry repositoryRegistry;
+    private final Map<UUID, Entity> entities = new HashMap<>();
+
+    public IdentityMap(RepositoryRegistry repositoryRegistry) {
+        this.repositoryRegistry = repositoryRegistry;
+    }
+
+    public <T extends Entity> T find(Class<T> type, UUID id) {
+        return findAll(type, List.of(id)).get(id);
+    }
+
+    /**
+     * Returns the entities with the given ids in the requested order; ids that do not exist are left out.
+     */
+    public <T extends Entity> Map<UUID, T> findAll(Class<T> type, Collection<UUID> ids) {
+        List<UUID> missingIds = new ArrayList<>();
+        for (var id : ids) {
+            if (!entities.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            repositoryRegistry.<T>getRepository(type)
+                .findByIds(missingIds)
+                .forEach(entity -> entities.put(entity.getId(), entity));
+        }
+
+        Map<UUID, T> found = new LinkedHashMap<>();
+        for (var id : ids) {
+            var entity = entities.get(id);
+            if (entity != null) {
+                found.put(id, type.cast(entity));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Re-reads the given entities with their rows locked until the end of the current transaction,
+     * replacing any copies loaded earlier.
+     */
+    public void lock(Class<?> type, Collection<UUID> ids) {
+        repositoryRegistry.<Entity>getRepository(type)
+            .lockByIds(ids)
+            .forEach(entity -> entities.put(entity.getId(), entity));
+    }
+
+    /**
+     * Forgets the entities that failed the version check, or everything if the conflicting ids are unknown.
+     */
+    public void evict(OptimisticLockException conflict) {
+        if (conflict.getConflictingIds().isEmpty()) {
+            entities.clear();
+        } else {
+            entities.keySet().removeAll(conflict.getConflictingIds());
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.example;
+
+/**
+ * Answer of a bulk import.
+ *
+ * @param imported the number of rows loaded
+ */
+public record ImportResult(long imported) {
+}
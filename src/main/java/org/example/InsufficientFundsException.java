@@ -0,0 +1,25 @@
+package org.example;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Exception thrown when a balance adjustment would take an account below its minimum balance.
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class InsufficientFundsException extends RuntimeException {
+
+    private final Set<UUID> accountIds;
+
+    public InsufficientFundsException(Set<UUID> accountIds) {
+        super("Insufficient funds or unknown accounts: " + accountIds);
+        this.accountIds = Set.copyOf(accountIds);
+    }
+
+    public Set<UUID> getAccountIds() {
+        return accountIds;
+    }
+}
@@ -0,0 +1,20 @@
+package org.example;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when rows sent for import are malformed or violate a constraint, such as a duplicate id.
+ * Nothing of the import has been loaded.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCopyDataException extends RuntimeException {
+
+    public InvalidCopyDataException(String message) {
+        super("Invalid import data: " + message);
+    }
+
+    public InvalidCopyDataException(Throwable cause) {
+        super("Invalid import data: " + cause.getMessage(), cause);
+    }
+}
@@ -16,6 +16,8 @@ public class JooqConfig {
             new Settings()
                 .withRenderQuotedNames(RenderQuotedNames.NEVER)
                 .withRenderNameCase(RenderNameCase.LOWER)
+                // IN lists padded to powers of two give the driver's statement cache few distinct texts to keep
+                .withInListPadding(true)
         );
     }
 }
@@ -0,0 +1,117 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes rows straight from a lazily fetched database cursor to the response, so heap usage
+ * does not depend on the number of rows. The cursor runs inside a read-only transaction,
+ * which PostgreSQL requires for the fetch size to take effect, on a replica if there is one.
+ * Results of bulk writes are streamed the same way, but outside of a transaction.
+ */
+@Component
+public class JsonStreaming {
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    public JsonStreaming(ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.reader = objectMapper.reader();
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public ResponseEntity<StreamingResponseBody> jsonArray(Supplier<? extends Stream<?>> rows) {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> write(rows, writer.writeValuesAsArray(out), true));
+    }
+
+    public ResponseEntity<StreamingResponseBody> ndjson(Supplier<? extends Stream<?>> rows) {
+        return ndjson(rows, true, null);
+    }
+
+    /**
+     * Writes each result as soon as it is produced, outside of any transaction, so that the producer
+     * can commit its own units of work while the response is being written. The results are produced on
+     * the thread writing the response, so the deadline of the calling request is taken along to it.
+     */
+    public ResponseEntity<StreamingResponseBody> ndjsonResults(Supplier<? extends Stream<?>> results) {
+        return ndjson(results, false, RequestDeadline.current());
+    }
+
+    /**
+     * Reads either a JSON array or a sequence of JSON values, such as NDJSON, one value at a time.
+     */
+    public <T> MappingIterator<T> readValues(InputStream in, Class<T> type) {
+        try {
+            return reader.forType(type).readValues(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(
+        Supplier<? extends Stream<?>> rows,
+        boolean readOnly,
+        RequestDeadline deadline
+    ) {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(out -> {
+                try (var _ = RequestDeadline.enter(deadline)) {
+                    write(rows, writer.withRootValueSeparator("\n").writeValues(out), readOnly);
+                }
+                newLine(out);
+            });
+    }
+
+    private void write(Supplier<? extends Stream<?>> rows, SequenceWriter sequenceWriter, boolean readOnly)
+        throws IOException {
+        try (sequenceWriter) {
+            if (readOnly) {
+                ReplicaRoutingDataSource.readFromReplica(() -> {
+                    readOnlyTransactionTemplate.executeWithoutResult(_ -> writeAll(rows, sequenceWriter));
+                    return null;
+                });
+            } else {
+                writeAll(rows, sequenceWriter);
+            }
+        }
+    }
+
+    private static void writeAll(Supplier<? extends Stream<?>> rows, SequenceWriter sequenceWriter) {
+        try (var stream = rows.get()) {
+            stream.forEach(row -> {
+                try {
+                    sequenceWriter.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void newLine(OutputStream out) throws IOException {
+        out.write('\n');
+    }
+}
@@ -0,0 +1,50 @@
+package org.example;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.example.TransferProperties.BalanceUpdateMode.LEDGER;
+
+/**
+ * Periodically folds ledger entries into account snapshots, so that reads only sum the entries of the last
+ * interval. Every node schedules it; a pass is skipped while another node is compacting.
+ */
+@Component
+public class LedgerCompactor {
+
+    private final LedgerRepository ledgerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final TransferProperties transferProperties;
+
+    public LedgerCompactor(
+        LedgerRepository ledgerRepository,
+        TransactionTemplate transactionTemplate,
+        TaskScheduler taskScheduler,
+        TransferProperties transferProperties
+    ) {
+        this.ledgerRepository = ledgerRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = taskScheduler;
+        this.transferProperties = transferProperties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (transferProperties.balanceUpdateMode() != LEDGER) {
+            return;
+        }
+        taskScheduler.scheduleWithFixedDelay(this::compact, transferProperties.ledger().compactionInterval());
+    }
+
+    /**
+     * @return the number of accounts whose snapshot has been moved, or -1 if another node is compacting
+     */
+    int compact() {
+        Integer compacted = transactionTemplate.execute(_ -> ledgerRepository.compact());
+        return compacted == null ? 0 : compacted;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Row3;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toCollection;
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.LEDGER_ENTRY;
+import static org.example.jooq.Tables.LEDGER_WATERMARK;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.sum;
+import static org.jooq.impl.DSL.values;
+
+/**
+ * Balance adjustments as immutable ledger entries. Transfers only insert rows here, so they never
+ * queue on an account row; {@link #compact()} folds entries into the account rows in the background.
+ */
+@Repository
+public class LedgerRepository implements BalanceRepository {
+
+    // Transactions with a lower id have finished; none of them can still add entries
+    private static final Field<Long> OLDEST_RUNNING_TX =
+        field("pg_snapshot_xmin(pg_current_snapshot())::text::bigint", Long.class);
+    private static final Field<Long> BALANCE = AccountRepository.balance(true);
+    // Hash seed that keeps advisory lock keys of debits apart from other advisory locks
+    private static final long DEBIT_LOCK_SEED = 0x4c45444745524442L;
+    private static final String COMPACTION_LOCK = "ledger_compaction";
+
+    private final DSLContext dsl;
+
+    public LedgerRepository(DSLContext dsl) {
+        this.dsl = dsl;
+    }
+
+    /**
+     * Inserts one entry per adjustment. Debits first take a transaction-level advisory lock per account,
+     * in id order, so that the guard of each debit sees every debit committed before it and two debits
+     * can never spend the same money. Credits take no lock and are only counted once committed.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void adjustBalances(List<BalanceAdjustment> adjustments) {
+        var ids = adjustments.stream().map(BalanceAdjustment::accountId).collect(toCollection(HashSet::new));
+        var debitIds = adjustments.stream()
+            .filter(adjustment -> adjustment.minBalance() != BalanceAdjustment.NO_LIMIT)
+            .map(BalanceAdjustment::accountId)
+            .toArray(UUID[]::new);
+        if (debitIds.length > 0) {
+            // OFFSET 0 keeps the ordered subquery from being flattened, so locks are taken in id order
+            dsl.execute(
+                "SELECT pg_advisory_xact_lock(hashtextextended(id::text, ?)) " +
+                    "FROM (SELECT id FROM unnest(?::uuid[]) AS debit(id) ORDER BY id OFFSET 0) AS debits",
+                DEBIT_LOCK_SEED,
+                debitIds
+            );
+        }
+
+        Row3<UUID, Long, Long>[] rows = adjustments.stream()
+            .map(adjustment -> AccountRepository.bindRow(
+                adjustment.accountId(),
+                adjustment.delta(),
+                adjustment.minBalance()
+            ))
+            .toArray(Row3[]::new);
+        var changes = values(rows).as("changes", "id", "delta", "min_balance");
+        var id = changes.field("id", UUID.class);
+        var delta = changes.field("delta", Long.class);
+        var minBalance = changes.field("min_balance", Long.class);
+
+        var insertedIds = dsl.insertInto(LEDGER_ENTRY, LEDGER_ENTRY.ACCOUNT_ID, LEDGER_ENTRY.AMOUNT)
+            .select(select(id, delta)
+                .from(changes)
+                .join(ACCOUNT).on(ACCOUNT.ID.eq(id))
+                .where(minBalance.eq(BalanceAdjustment.NO_LIMIT).or(BALANCE.plus(delta).ge(minBalance))))
+            .returning(LEDGER_ENTRY.ACCOUNT_ID)
+            .fetchSet(LEDGER_ENTRY.ACCOUNT_ID);
+
+        if (insertedIds.size() != ids.size()) {
+            ids.removeAll(insertedIds);
+            throw new InsufficientFundsException(ids);
+        }
+    }
+
+    /**
+     * Folds the entries of finished transactions into the balance of their accounts and moves the snapshot
+     * of those accounts past them. Only entries from the watermark of the previous pass on are scanned;
+     * no snapshot is ever ahead of the watermark, so none of them has been folded yet.
+     * Must run inside a transaction; returns -1 without doing anything if another node is compacting.
+     *
+     * @return the number of accounts whose snapshot has been moved
+     */
+    public int compact() {
+        boolean locked = dsl.select(field(
+                "pg_try_advisory_xact_lock(hashtextextended(?, 0))", Boolean.class, COMPACTION_LOCK
+            ))
+            .fetchSingle()
+            .value1();
+        if (!locked) {
+            return -1;
+        }
+
+        long watermark = dsl.select(LEDGER_WATERMARK.TX_ID)
+            .from(LEDGER_WATERMARK)
+            .fetchSingle(LEDGER_WATERMARK.TX_ID);
+        // Bound once, so that the folded entries and the new snapshots agree even if more transactions finish
+        long horizon = dsl.select(OLDEST_RUNNING_TX).fetchSingle(OLDEST_RUNNING_TX);
+        if (horizon <= watermark) {
+            return 0;
+        }
+
+        var pending = name("pending").fields("account_id", "amount").as(
+            select(LEDGER_ENTRY.ACCOUNT_ID, sum(LEDGER_ENTRY.AMOUNT))
+                .from(LEDGER_ENTRY)
+                .where(LEDGER_ENTRY.TX_ID.ge(watermark))
+                .and(LEDGER_ENTRY.TX_ID.lt(horizon))
+                .groupBy(LEDGER_ENTRY.ACCOUNT_ID)
+        );
+        // The version is left alone: a snapshot does not change the balance readers compute
+        int compacted = dsl.with(pending)
+            .update(ACCOUNT)
+            .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(pending.field("amount", Long.class)))
+            .set(ACCOUNT.SNAPSHOT_XID, horizon)
+            .from(pending)
+            .where(ACCOUNT.ID.eq(pending.field("account_id", UUID.class)))
+            .execute();
+
+        dsl.update(LEDGER_WATERMARK).set(LEDGER_WATERMARK.TX_ID, horizon).execute();
+        return compacted;
+    }
+}
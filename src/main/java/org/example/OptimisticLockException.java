@@ -1,17 +1,34 @@
 package org.example;
 
+import java.util.Set;
+import java.util.UUID;
+
 /**
  * Exception thrown when an optimistic lock conflict is detected.
  * This occurs when an entity's version has changed between read and update operations.
  */
 public class OptimisticLockException extends RuntimeException {
 
+    private final Set<UUID> conflictingIds;
+
     public OptimisticLockException(String message) {
+        this(message, Set.of());
+    }
+
+    public OptimisticLockException(String message, Set<UUID> conflictingIds) {
         super(message);
+        this.conflictingIds = Set.copyOf(conflictingIds);
     }
 
     public OptimisticLockException(String message, Throwable cause) {
         super(message, cause);
+        this.conflictingIds = cause instanceof OptimisticLockException e ? e.conflictingIds : Set.of();
     }
-}
 
+    /**
+     * Ids of the entities whose version check failed, if known.
+     */
+    public Set<UUID> getConflictingIds() {
+        return conflictingIds;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when a unit of work is turned away because as many as the {@link ConcurrencyLimiter}
+ * currently allows are already in flight, or because it queued on contended ids for longer than the
+ * {@link ContentionManager} lets it. Nothing has been read or written; the caller may try again later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(int limit) {
+        super("Too many units of work in flight, the current limit is " + limit);
+    }
+
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
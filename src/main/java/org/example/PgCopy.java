@@ -0,0 +1,56 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.TableField;
+import org.postgresql.PGConnection;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Streams rows between a request or response body and PostgreSQL with {@code COPY}, through the driver's
+ * {@link org.postgresql.copy.CopyManager}. Rows are never mapped to entities, so heap usage does not depend
+ * on their number. A copy is a single statement: an import either loads every row or none.
+ */
+final class PgCopy {
+
+    private PgCopy() {
+    }
+
+    /**
+     * @return the number of rows loaded
+     * @throws InvalidCopyDataException if a row does not fit the columns or violates a constraint
+     */
+    static long copyIn(DSLContext dsl, Table<?> table, CopyFormat format, InputStream in, TableField<?, ?>... columns) {
+        var columnNames = Arrays.stream(columns).map(TableField::getName).collect(Collectors.joining(", "));
+        var sql = "COPY " + table.getName() + " (" + columnNames + ") FROM STDIN " + format.options();
+        return dsl.connectionResult(connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in);
+            } catch (SQLException e) {
+                throw isInvalidData(e) ? new InvalidCopyDataException(e) : e;
+            }
+        });
+    }
+
+    /**
+     * Writes the rows of the query, rendered with inlined bind values.
+     *
+     * @return the number of rows written
+     */
+    static long copyOut(DSLContext dsl, Select<?> query, CopyFormat format, OutputStream out) {
+        var sql = "COPY (" + dsl.renderInlined(query) + ") TO STDOUT " + format.options();
+        return dsl.connectionResult(connection -> connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out));
+    }
+
+    // Class 22 is data exception, such as malformed values; class 23 is integrity constraint violation
+    private static boolean isInvalidData(SQLException e) {
+        var sqlState = e.getSQLState();
+        return sqlState != null && (sqlState.startsWith("22") || sqlState.startsWith("23"));
+    }
+}
@@ -0,0 +1,198 @@
+package org.example;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that every account balance is its opening balance plus its net transfers and, on full runs,
+ * that the total balance is conserved. The id space is split into ranges that workers scan in parallel,
+ * each on its own connection, all reading one snapshot exported by the run, so the totals add up
+ * even while transfers go on.
+ * <p>
+ * An incremental run only checks accounts with change events after the checkpoint of the last run that found
+ * no mismatch. The checkpoint is kept as the change feed consumer {@value #CHECKPOINT_CONSUMER}, which keeps
+ * those events from being pruned; without the change feed, every run is a full one.
+ */
+@Component
+public class Reconciliation {
+
+    static final String CHECKPOINT_CONSUMER = "reconciliation";
+
+    private final ReconciliationRepository repository;
+    private final ChangeFeedRepository changeFeedRepository;
+    private final ChangeFeed changeFeed;
+    private final TransactionTemplate snapshotTransactionTemplate;
+    private final ReconciliationProperties properties;
+
+    private volatile ReconciliationReport lastReport;
+
+    public Reconciliation(
+        ReconciliationRepository repository,
+        ChangeFeedRepository changeFeedRepository,
+        ChangeFeed changeFeed,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        ReconciliationProperties properties
+    ) {
+        this.repository = repository;
+        this.changeFeedRepository = changeFeedRepository;
+        this.changeFeed = changeFeed;
+        this.snapshotTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransactionTemplate.setReadOnly(true);
+        this.properties = properties;
+        Gauge.builder("reconciliation.mismatches", this, r -> r.lastReport == null ? 0 : r.lastReport.mismatchCount())
+            .description("Accounts that did not reconcile in the last run")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return the report of the last run, or {@code null} if none has finished yet
+     */
+    public ReconciliationReport getLastReport() {
+        return lastReport;
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:-}")
+    public void runScheduled() {
+        run(true);
+    }
+
+    public ReconciliationReport run(boolean incremental) {
+        long start = System.nanoTime();
+        var report = snapshotTransactionTemplate.execute(_ -> {
+            // The exported snapshot stays valid while this transaction is open
+            var snapshot = repository.exportSnapshot();
+            long checkpoint = changeFeedRepository.lastSequence();
+            Long changedAfter = incremental && changeFeed.isEnabled()
+                ? changeFeedRepository.findAcknowledged(CHECKPOINT_CONSUMER)
+                : null;
+            var results = scan(snapshot, changedAfter, checkpoint);
+            return summarize(changedAfter != null, results, checkpoint, Duration.ofNanos(System.nanoTime() - start));
+        });
+        if (changeFeed.isEnabled() && report.mismatchCount() == 0) {
+            changeFeed.register(CHECKPOINT_CONSUMER, report.checkpoint());
+            changeFeed.acknowledge(CHECKPOINT_CONSUMER, report.checkpoint());
+        }
+        lastReport = report;
+        return report;
+    }
+
+    private List<RangeResult> scan(String snapshot, Long changedAfter, long changedUpTo) {
+        var executor = Executors.newFixedThreadPool(
+            properties.parallelism(),
+            Thread.ofVirtual().name("reconciliation-", 0).factory()
+        );
+        try (executor) {
+            var futures = ReconciliationRepository.KeyRange.split(properties.ranges()).stream()
+                .map(range -> CompletableFuture.supplyAsync(
+                    () -> scanRange(snapshot, range, changedAfter, changedUpTo),
+                    executor
+                ))
+                .toList();
+            return futures.stream().map(Reconciliation::join).toList();
+        }
+    }
+
+    private RangeResult scanRange(
+        String snapshot,
+        ReconciliationRepository.KeyRange range,
+        Long changedAfter,
+        long changedUpTo
+    ) {
+        return snapshotTransactionTemplate.execute(_ -> {
+            repository.importSnapshot(snapshot);
+            var result = new RangeResult(properties.maxMismatches());
+            try (var flows = repository.streamFlows(range, changedAfter, changedUpTo)) {
+                flows.forEach(result::add);
+            }
+            return result;
+        });
+    }
+
+    private ReconciliationReport summarize(
+        boolean incremental,
+        List<RangeResult> results,
+        long checkpoint,
+        Duration elapsed
+    ) {
+        long accounts = 0;
+        long totalBalance = 0;
+        long totalOpeningBalance = 0;
+        long mismatchCount = 0;
+        var mismatches = new ArrayList<ReconciliationReport.Mismatch>();
+        for (var result : results) {
+            accounts += result.accounts;
+            totalBalance += result.totalBalance;
+            totalOpeningBalance += result.totalOpeningBalance;
+            mismatchCount += result.mismatchCount;
+            mismatches.addAll(result.mismatches.subList(
+                0,
+                Math.min(result.mismatches.size(), properties.maxMismatches() - mismatches.size())
+            ));
+        }
+        return new ReconciliationReport(
+            incremental,
+            accounts,
+            incremental ? null : totalBalance,
+            incremental ? null : totalOpeningBalance,
+            mismatchCount,
+            List.copyOf(mismatches),
+            checkpoint,
+            elapsed
+        );
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class RangeResult {
+
+        private final int maxMismatches;
+        private final List<ReconciliationReport.Mismatch> mismatches = new ArrayList<>();
+        private long accounts;
+        private long totalBalance;
+        private long totalOpeningBalance;
+        private long mismatchCount;
+
+        RangeResult(int maxMismatches) {
+            this.maxMismatches = maxMismatches;
+        }
+
+        void add(ReconciliationRepository.AccountFlows flows) {
+            accounts++;
+            totalBalance += flows.balance();
+            totalOpeningBalance += flows.openingBalance();
+            if (flows.balance() != flows.expectedBalance()) {
+                mismatchCount++;
+                if (mismatches.size() < maxMismatches) {
+                    mismatches.add(new ReconciliationReport.Mismatch(
+                        flows.accountId(),
+                        flows.balance(),
+                        flows.expectedBalance()
+                    ));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.example;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint that runs a reconciliation and answers with its report, or shows the last report.
+ */
+@Component
+@Endpoint(id = "reconciliation")
+public class ReconciliationEndpoint {
+
+    private final Reconciliation reconciliation;
+
+    public ReconciliationEndpoint(Reconciliation reconciliation) {
+        this.reconciliation = reconciliation;
+    }
+
+    @ReadOperation
+    public ReconciliationReport lastReport() {
+        return reconciliation.getLastReport();
+    }
+
+    @WriteOperation
+    public ReconciliationReport run(boolean incremental) {
+        return reconciliation.run(incremental);
+    }
+}
@@ -0,0 +1,19 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of {@link Reconciliation}. Every worker holds a database connection for as long as it scans,
+ * in addition to the one holding the shared snapshot, so {@code parallelism} has to stay below the pool size.
+ *
+ * @param ranges        number of id ranges the accounts are split into; more ranges than workers balance uneven ranges
+ * @param maxMismatches mismatches listed in a report; all of them are counted
+ */
+@ConfigurationProperties("reconciliation")
+public record ReconciliationProperties(
+    @DefaultValue("4") int parallelism,
+    @DefaultValue("64") int ranges,
+    @DefaultValue("1000") int maxMismatches
+) {
+}
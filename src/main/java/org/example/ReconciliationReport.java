@@ -0,0 +1,34 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of a reconciliation run. Totals are only computed by full runs, and are {@code null} for incremental ones.
+ *
+ * @param mismatchCount number of accounts whose balance is not their opening balance plus their net transfers
+ * @param mismatches    the first of them, up to {@code reconciliation.max-mismatches}
+ * @param checkpoint    the change feed sequence number the run has seen everything up to
+ */
+public record ReconciliationReport(
+    boolean incremental,
+    long accountsChecked,
+    Long totalBalance,
+    Long totalOpeningBalance,
+    long mismatchCount,
+    List<Mismatch> mismatches,
+    long checkpoint,
+    Duration elapsed
+) {
+
+    /**
+     * @return whether every checked account reconciles and, for a full run, the total balance is conserved
+     */
+    public boolean isBalanced() {
+        return mismatchCount == 0 && (totalBalance == null || totalBalance.equals(totalOpeningBalance));
+    }
+
+    public record Mismatch(UUID accountId, long balance, long expectedBalance) {
+    }
+}
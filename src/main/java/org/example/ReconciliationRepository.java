@@ -0,0 +1,118 @@
+package org.example;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Records;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.example.TransferProperties.BalanceUpdateMode.LEDGER;
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.CHANGE_EVENT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.jooq.impl.DSL.coalesce;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.noCondition;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.sum;
+import static org.jooq.impl.SQLDataType.BIGINT;
+
+@Repository
+public class ReconciliationRepository {
+
+    private static final int FETCH_SIZE = 1_000;
+
+    private final DSLContext dsl;
+    private final Field<Long> balance;
+    private final Field<Long> netFlow;
+
+    public ReconciliationRepository(DSLContext dsl, TransferProperties transferProperties) {
+        this.dsl = dsl;
+        this.balance = AccountRepository.balance(transferProperties.balanceUpdateMode() == LEDGER);
+        // Both directions are read from the covering statement indexes
+        var incoming = coalesce(
+            field(select(sum(TRANSFER.AMOUNT)).from(TRANSFER).where(TRANSFER.TO_ACCOUNT_ID.eq(ACCOUNT.ID))),
+            BigDecimal.ZERO
+        ).cast(BIGINT);
+        var outgoing = coalesce(
+            field(select(sum(TRANSFER.AMOUNT)).from(TRANSFER).where(TRANSFER.FROM_ACCOUNT_ID.eq(ACCOUNT.ID))),
+            BigDecimal.ZERO
+        ).cast(BIGINT);
+        this.netFlow = incoming.minus(outgoing);
+    }
+
+    /**
+     * Exports the snapshot of the current transaction, so that other transactions can read exactly the same data.
+     * Must run inside a repeatable read transaction, which has to stay open for as long as the snapshot is used.
+     */
+    public String exportSnapshot() {
+        return dsl.fetchValue(field("pg_export_snapshot()", String.class));
+    }
+
+    /**
+     * Makes the current repeatable read transaction read an exported snapshot; must be its first statement.
+     */
+    public void importSnapshot(String snapshotId) {
+        dsl.execute("SET TRANSACTION SNAPSHOT {0}", inline(snapshotId));
+    }
+
+    /**
+     * Streams the balance, opening balance and net transfer flow of the accounts in the range. With
+     * {@code changedAfter}, only accounts with a change event numbered in {@code (changedAfter, changedUpTo]}
+     * are included. Must run inside a transaction, and the returned stream must be closed.
+     */
+    public Stream<AccountFlows> streamFlows(KeyRange range, Long changedAfter, long changedUpTo) {
+        Condition changed = changedAfter == null
+            ? noCondition()
+            : ACCOUNT.ID.in(select(CHANGE_EVENT.ENTITY_ID)
+                .from(CHANGE_EVENT)
+                .where(CHANGE_EVENT.ENTITY_TYPE.eq(Account.class.getSimpleName()))
+                .and(CHANGE_EVENT.SEQ.gt(changedAfter))
+                .and(CHANGE_EVENT.SEQ.le(changedUpTo)));
+        return dsl.select(ACCOUNT.ID, balance, ACCOUNT.OPENING_BALANCE, netFlow)
+            .from(ACCOUNT)
+            .where(range.from() == null ? noCondition() : ACCOUNT.ID.ge(range.from()))
+            .and(range.to() == null ? noCondition() : ACCOUNT.ID.lt(range.to()))
+            .and(changed)
+            .fetchSize(FETCH_SIZE)
+            .fetchStream()
+            .map(Records.mapping(AccountFlows::new));
+    }
+
+    public record AccountFlows(UUID accountId, long balance, long openingBalance, long netFlow) {
+
+        public long expectedBalance() {
+            return openingBalance + netFlow;
+        }
+    }
+
+    /**
+     * Ids from {@code from} (inclusive) to {@code to} (exclusive); {@code null} leaves a side open.
+     */
+    public record KeyRange(UUID from, UUID to) {
+
+        /**
+         * Splits the id space into {@code count} ranges of equal width. PostgreSQL orders uuids by their bytes,
+         * which is the unsigned order of their most significant bits first.
+         */
+        public static List<KeyRange> split(int count) {
+            long width = Long.divideUnsigned(-1L, count);
+            var ranges = new ArrayList<KeyRange>(count);
+            UUID from = null;
+            for (int i = 1; i < count; i++) {
+                var to = new UUID(width * i, 0L);
+                ranges.add(new KeyRange(from, to));
+                from = to;
+            }
+            ranges.add(new KeyRange(from, null));
+            return ranges;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Param;
+import org.jooq.Query;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A hot-path statement rendered once from the jOOQ DSL and run as a plain JDBC prepared statement
+ * on the connection of the current transaction. Calls skip building, rendering and reflective mapping,
+ * and always send the same SQL text, so the driver keeps reusing its server-side prepared statement.
+ * <p>
+ * The query declares its inputs with {@link org.jooq.impl.DSL#param(String, Class) named parameters};
+ * calls pass values for them in the order of {@code paramNames}. Other bind values of the query,
+ * such as constants, keep the value they had when it was rendered.
+ */
+final class RenderedQuery {
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    private final DSLContext dsl;
+    private final String sql;
+    private final Object[] bindValues;
+    // For every placeholder, the index of the call value bound to it, or -1 for a rendered constant
+    private final int[] inputs;
+    private final int inputCount;
+
+    RenderedQuery(DSLContext dsl, Query query, String... paramNames) {
+        this.dsl = dsl;
+        this.sql = dsl.render(query);
+
+        // Parameters come in the order of their placeholders
+        var params = new ArrayList<Map.Entry<String, Param<?>>>(query.getParams().entrySet());
+        this.bindValues = new Object[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            bindValues[i] = params.get(i).getValue().getValue();
+        }
+        this.inputs = new int[params.size()];
+        Arrays.fill(inputs, -1);
+        for (int i = 0; i < paramNames.length; i++) {
+            inputs[indexOf(params, paramNames[i])] = i;
+        }
+        this.inputCount = paramNames.length;
+    }
+
+    /**
+     * @return the first row mapped, or {@code null} if there is none
+     */
+    <T> T fetchOne(RowMapper<T> mapper, Object... values) {
+        return dsl.connectionResult(connection -> {
+            try (var statement = connection.prepareStatement(sql)) {
+                bind(statement, values);
+                try (var resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? mapper.map(resultSet) : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of rows affected
+     */
+    int execute(Object... values) {
+        return dsl.connectionResult(connection -> {
+            try (var statement = connection.prepareStatement(sql)) {
+                bind(statement, values);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private void bind(PreparedStatement statement, Object[] values) throws SQLException {
+        if (values.length != inputCount) {
+            throw new IllegalArgumentException("Expected " + inputCount + " values, got " + values.length);
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            statement.setObject(i + 1, inputs[i] >= 0 ? values[inputs[i]] : bindValues[i]);
+        }
+    }
+
+    private static int indexOf(ArrayList<Map.Entry<String, Param<?>>> params, String name) {
+        for (int i = 0; i < params.size(); i++) {
+            if (params.get(i).getKey().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Query has no parameter named " + name);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures replica lag on a fixed delay and publishes it as {@code replicas.lag}, tagged by replica URL.
+ * Replicas take no reads until their first measurement.
+ */
+@Component
+@ConditionalOnProperty(prefix = "replicas", name = "enabled", havingValue = "true")
+public class ReplicaLagMonitor {
+
+    private final ReplicaRoutingDataSource dataSource;
+    private final TaskScheduler taskScheduler;
+    private final ReplicaProperties properties;
+
+    public ReplicaLagMonitor(
+        ReplicaRoutingDataSource dataSource,
+        TaskScheduler taskScheduler,
+        MeterRegistry meterRegistry,
+        ReplicaProperties properties
+    ) {
+        this.dataSource = dataSource;
+        this.taskScheduler = taskScheduler;
+        this.properties = properties;
+        for (var replica : dataSource.getReplicas()) {
+            TimeGauge.builder("replicas.lag", replica, TimeUnit.MILLISECONDS,
+                    r -> r.lag() == null ? Double.NaN : r.lag().toMillis())
+                .description("Replay lag of the replica at the last check")
+                .tag("replica", replica.url())
+                .register(meterRegistry);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        dataSource.checkLag();
+        taskScheduler.scheduleWithFixedDelay(dataSource::checkLag, properties.lagCheckInterval());
+    }
+}
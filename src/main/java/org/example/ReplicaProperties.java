@@ -0,0 +1,35 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Read replicas for reads made outside of commit transactions. Replicas use the credentials,
+ * driver and pool settings of {@code spring.datasource}.
+ *
+ * @param maxLag   replay lag above which a replica stops taking reads
+ * @param fallback where reads go while every replica lags more than {@code maxLag}
+ */
+@ConfigurationProperties("replicas")
+public record ReplicaProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue List<String> urls,
+    @DefaultValue("1s") Duration maxLag,
+    @DefaultValue("1s") Duration lagCheckInterval,
+    @DefaultValue("PRIMARY") LagFallback fallback
+) {
+
+    public enum LagFallback {
+        /**
+         * Reads go to the primary until a replica catches up.
+         */
+        PRIMARY,
+        /**
+         * Reads keep going to the reachable replica with the least lag, at the cost of more conflicts at commit.
+         */
+        LEAST_LAGGING_REPLICA
+    }
+}
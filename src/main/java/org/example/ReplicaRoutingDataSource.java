@@ -0,0 +1,154 @@
+package org.example;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.example.ReplicaProperties.LagFallback.LEAST_LAGGING_REPLICA;
+
+/**
+ * Hands out replica connections to code running inside {@link #readFromReplica(Supplier)}, and primary
+ * connections to everything else, including every transaction that writes. Replicas take turns among those
+ * whose last measured lag is within {@code maxLag}; when none is, reads follow the configured fallback.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Boolean> REPLICA_READS = ThreadLocal.withInitial(() -> false);
+
+    // Zero when the replica has replayed all it received, so that an idle primary does not look like lag
+    private static final String LAG_MILLIS = """
+        CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+             ELSE coalesce(extract(epoch FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+        END::bigint""";
+
+    private final List<Replica> replicas;
+    private final ReplicaProperties properties;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<Replica> replicas, ReplicaProperties properties) {
+        this.replicas = List.copyOf(replicas);
+        this.properties = properties;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i).dataSource());
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    /**
+     * Runs reads that tolerate slightly stale data, such as the logic phase of a unit of work whose commit
+     * checks versions, on a replica. Connections taken by {@code reads}, including the one of a transaction
+     * it starts, come from a replica, so it must not write.
+     */
+    public static <T> T readFromReplica(Supplier<T> reads) {
+        if (REPLICA_READS.get()) {
+            return reads.get();
+        }
+        REPLICA_READS.set(true);
+        try {
+            return reads.get();
+        } finally {
+            REPLICA_READS.remove();
+        }
+    }
+
+    /**
+     * @return whether connections taken on this thread now come from a replica, if there is any
+     */
+    public static boolean isReadingFromReplica() {
+        return REPLICA_READS.get();
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Measures the replay lag of every replica; a replica that cannot be reached takes no reads until the next check.
+     */
+    public void checkLag() {
+        for (var replica : replicas) {
+            try {
+                long lagMillis = DSL.using(replica.dataSource(), SQLDialect.POSTGRES)
+                    .fetchValue(DSL.field(LAG_MILLIS, SQLDataType.BIGINT));
+                replica.lag = Duration.ofMillis(lagMillis);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to measure the lag of replica " + replica.url(), e);
+                replica.lag = null;
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!REPLICA_READS.get() || replicas.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            var lag = replicas.get(index).lag;
+            if (lag != null && lag.compareTo(properties.maxLag()) <= 0) {
+                return index;
+            }
+        }
+        return properties.fallback() == LEAST_LAGGING_REPLICA ? leastLagging() : null;
+    }
+
+    private Integer leastLagging() {
+        Integer least = null;
+        Duration leastLag = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            var lag = replicas.get(i).lag;
+            if (lag != null && (leastLag == null || lag.compareTo(leastLag) < 0)) {
+                least = i;
+                leastLag = lag;
+            }
+        }
+        return least;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource().close());
+    }
+
+    public static final class Replica {
+
+        private final String url;
+        private final HikariDataSource dataSource;
+        // Null until measured, or while unreachable
+        private volatile Duration lag;
+
+        public Replica(String url, HikariDataSource dataSource) {
+            this.url = url;
+            this.dataSource = dataSource;
+        }
+
+        public String url() {
+            return url;
+        }
+
+        HikariDataSource dataSource() {
+            return dataSource;
+        }
+
+        /**
+         * @return the last measured replay lag, or {@code null} if it is unknown
+         */
+        public Duration lag() {
+            return lag;
+        }
+    }
+}
@@ -1,9 +1,36 @@
 package org.example;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
 public interface Repository<T> {
 
     T save(T entity);
 
     void update(T entity);
-}
 
+    default List<T> findByIds(Collection<UUID> ids) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support reads by id");
+    }
+
+    /**
+     * Loads the entities with the given ids past any cache and locks their rows, in id order,
+     * until the end of the current transaction.
+     */
+    default List<T> lockByIds(Collection<UUID> ids) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support locking reads");
+    }
+
+    default void saveAll(List<T> entities) {
+        entities.forEach(this::save);
+    }
+
+    /**
+     * Applies versioned updates for all given entities. Entities are expected to be sorted by id,
+     * so that rows are locked in a consistent order across concurrent transactions.
+     */
+    default void updateAll(List<T> entities) {
+        entities.forEach(this::update);
+    }
+}
@@ -5,17 +5,31 @@ import org.springframework.stereotype.Component;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.example.TransferProperties.BalanceUpdateMode.LEDGER;
+
 @Component
 public class RepositoryRegistry {
 
     private final Map<Class<?>, Repository<?>> repositories = new HashMap<>();
+    private final BalanceRepository balanceRepository;
 
     public RepositoryRegistry(
         AccountRepository accountRepository,
-        TransferRepository transferRepository
+        TransferRepository transferRepository,
+        LedgerRepository ledgerRepository,
+        IdempotencyKeyRepository idempotencyKeyRepository,
+        TransferProperties transferProperties
     ) {
         repositories.put(Account.class, accountRepository);
         repositories.put(Transfer.class, transferRepository);
+        repositories.put(IdempotencyKey.class, idempotencyKeyRepository);
+        this.balanceRepository = transferProperties.balanceUpdateMode() == LEDGER
+            ? ledgerRepository
+            : accountRepository;
+    }
+
+    public BalanceRepository getBalanceRepository() {
+        return balanceRepository;
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which the caller of a request needs its answer. Units of work started while a deadline
+ * is {@link #enter entered} stop retrying once it has passed, and bound the statements of their commit by the
+ * time left, so that no work is queued or retried for a caller that has already given up.
+ */
+public final class RequestDeadline {
+
+    // Far beyond any request, close enough that nanoTime arithmetic cannot overflow
+    private static final Duration MAX_TIMEOUT = Duration.ofDays(1);
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long nanoTime;
+
+    private RequestDeadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @param timeout the time the caller is willing to wait from now; zero or negative means it has passed
+     */
+    public static RequestDeadline after(Duration timeout) {
+        if (timeout.isNegative()) {
+            return new RequestDeadline(System.nanoTime());
+        }
+        var bounded = timeout.compareTo(MAX_TIMEOUT) > 0 ? MAX_TIMEOUT : timeout;
+        return new RequestDeadline(System.nanoTime() + bounded.toNanos());
+    }
+
+    /**
+     * @return the deadline entered on this thread, or {@code null} if there is none
+     */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the deadline current on this thread until the returned scope is closed. A deadline entered
+     * inside another one can only make it earlier.
+     */
+    public static Scope enter(RequestDeadline deadline) {
+        if (deadline == null) {
+            return Scope.NONE;
+        }
+        var previous = CURRENT.get();
+        CURRENT.set(previous == null || deadline.isBefore(previous) ? deadline : previous);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return the time left, or zero if the deadline has passed
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0L, nanoTime - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return nanoTime - System.nanoTime() <= 0;
+    }
+
+    public boolean isBefore(RequestDeadline other) {
+        return nanoTime - other.nanoTime < 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDeadline[remaining=" + remaining() + "]";
+    }
+
+    public interface Scope extends AutoCloseable {
+
+        Scope NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+}
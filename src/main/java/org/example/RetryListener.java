@@ -0,0 +1,21 @@
+package org.example;
+
+import java.time.Duration;
+
+/**
+ * Callbacks invoked by {@link UnitOfWork} for every attempt of a retriable unit of work.
+ */
+public interface RetryListener {
+
+    RetryListener NONE = new RetryListener() {
+    };
+
+    default void onConflict(int attempt, OptimisticLockException exception, Duration backoff) {
+    }
+
+    default void onSuccess(int attempts) {
+    }
+
+    default void onExhausted(int attempts, OptimisticLockException exception) {
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Describes how {@link UnitOfWork} retries after an optimistic lock conflict.
+ * Backoff uses decorrelated jitter: each delay is picked at random between {@code baseDelay}
+ * and three times the previous delay, capped at {@code maxDelay}. A base delay below {@link #MIN_BASE_DELAY}
+ * counts as that, so that a zero base delay still backs off; a zero {@code maxDelay} retries immediately.
+ * Retrying stops once {@code maxAttempts} is reached or the next attempt would start after {@code timeout}.
+ */
+public record RetryPolicy(
+    int maxAttempts,
+    Duration baseDelay,
+    Duration maxDelay,
+    Duration timeout,
+    RetryListener listener
+) {
+
+    public static final Duration MIN_BASE_DELAY = Duration.ofMillis(1);
+
+    public static RetryPolicy immediate(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, Duration.ZERO, Duration.ZERO, Duration.ofDays(1), RetryListener.NONE);
+    }
+
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, timeout, listener);
+    }
+
+    public RetryPolicy withBackoff(Duration baseDelay, Duration maxDelay) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, timeout, listener);
+    }
+
+    public RetryPolicy withTimeout(Duration timeout) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, timeout, listener);
+    }
+
+    public RetryPolicy withListener(RetryListener listener) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, timeout, listener);
+    }
+
+    public Duration nextDelay(Duration previousDelay) {
+        long cap = maxDelay.toNanos();
+        if (cap <= 0) {
+            return Duration.ZERO;
+        }
+        long base = Math.min(cap, Math.max(baseDelay.toNanos(), MIN_BASE_DELAY.toNanos()));
+        long upper = Math.max(base, previousDelay.toNanos()) * 3;
+        long delay = upper > base ? ThreadLocalRandom.current().nextLong(base, upper) : base;
+        return Duration.ofNanos(Math.min(cap, delay));
+    }
+}
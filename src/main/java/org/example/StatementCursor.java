@@ -0,0 +1,39 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in an account statement, ordered by {@code (createdAt, transferId)}.
+ * Clients pass it back as an opaque string to get the next page.
+ */
+public record StatementCursor(OffsetDateTime createdAt, UUID transferId) {
+
+    public static StatementCursor of(StatementEntry entry) {
+        return new StatementCursor(entry.createdAt(), entry.transferId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not a cursor produced by {@link #encode()}
+     */
+    public static StatementCursor decode(String cursor) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/", 2);
+            return new StatementCursor(
+                OffsetDateTime.ofInstant(Instant.parse(parts[0]), ZoneOffset.UTC),
+                UUID.fromString(parts[1])
+            );
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid statement cursor: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        var value = createdAt.toInstant() + "/" + transferId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,10 @@
+package org.example;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * One transfer as seen from an account: {@code amount} is negative for money sent and positive for money received.
+ */
+public record StatementEntry(UUID transferId, UUID counterpartyAccountId, long amount, OffsetDateTime createdAt) {
+}
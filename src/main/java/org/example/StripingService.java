@@ -0,0 +1,50 @@
+package org.example;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.example.TransferProperties.BalanceUpdateMode.DELTA;
+
+@Service
+public class StripingService {
+
+    private final AccountRepository accountRepository;
+    private final AccountCache accountCache;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean delta;
+
+    public StripingService(
+        AccountRepository accountRepository,
+        AccountCache accountCache,
+        TransactionTemplate transactionTemplate,
+        TransferProperties transferProperties
+    ) {
+        this.accountRepository = accountRepository;
+        this.accountCache = accountCache;
+        this.transactionTemplate = transactionTemplate;
+        this.delta = transferProperties.balanceUpdateMode() == DELTA;
+    }
+
+    /**
+     * Changes the number of stripes of an account online. Zero stripes turns striping off.
+     * Only balance adjustments write to stripes, so accounts can only be striped in {@code DELTA} mode.
+     *
+     * @return the account after re-striping, or {@code null} if it does not exist
+     * @throws IllegalArgumentException if the number of stripes is negative
+     * @throws IllegalStateException    if stripes are asked for outside of {@code DELTA} mode
+     */
+    public Account restripe(UUID accountId, int stripes) {
+        if (stripes < 0) {
+            throw new IllegalArgumentException("Number of stripes must not be negative: " + stripes);
+        }
+        if (stripes > 0 && !delta) {
+            throw new IllegalStateException("Accounts can only be striped in DELTA balance update mode");
+        }
+        var account = transactionTemplate.execute(_ -> accountRepository.restripe(accountId, stripes));
+        accountCache.evict(List.of(accountId));
+        return account;
+    }
+}
@@ -1,36 +1,144 @@
 package org.example;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/transfers")
 public class TransferController {
 
+    private static final int MAX_PAGE_SIZE = 1_000;
+    // A repeated request with the same key returns the transfer created by the first one
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final TransferService transferService;
+    private final BulkTransferService bulkTransferService;
     private final TransferRepository transferRepository;
+    private final JsonStreaming jsonStreaming;
+    private final TransactionTemplate transactionTemplate;
 
-    public TransferController(TransferService transferService, TransferRepository transferRepository) {
+    public TransferController(
+        TransferService transferService,
+        BulkTransferService bulkTransferService,
+        TransferRepository transferRepository,
+        JsonStreaming jsonStreaming,
+        TransactionTemplate transactionTemplate
+    ) {
         this.transferService = transferService;
+        this.bulkTransferService = bulkTransferService;
         this.transferRepository = transferRepository;
+        this.jsonStreaming = jsonStreaming;
+        this.transactionTemplate = transactionTemplate;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public Transfer createTransfer(@RequestBody CreateTransferRequest request) {
+    public Transfer createTransfer(
+        @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+        @RequestBody CreateTransferRequest request
+    ) {
         return transferService.createTransfer(
+            idempotencyKey,
             request.fromAccountId(),
             request.toAccountId(),
             request.amount()
         );
     }
 
-    @GetMapping
-    public List<Transfer> getAllTransfers() {
-        return transferRepository.findAll();
+    /**
+     * Same as {@link #createTransfer}, but releases the servlet thread while the unit of work runs.
+     */
+    @PostMapping("/async")
+    public CompletableFuture<ResponseEntity<Transfer>> createTransferAsync(
+        @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+        @RequestBody CreateTransferRequest request
+    ) {
+        return transferService.createTransferAsync(
+                idempotencyKey,
+                request.fromAccountId(),
+                request.toAccountId(),
+                request.amount()
+            )
+            .thenApply(transfer -> ResponseEntity.status(HttpStatus.CREATED).body(transfer));
+    }
+
+    /**
+     * Takes a JSON array or NDJSON stream of transfers and answers with one NDJSON result per item,
+     * in request order. With {@code atomicity=CHUNK} items are read and committed chunk by chunk while
+     * results are written; with {@code atomicity=ALL} the whole request commits or fails as one.
+     */
+    @PostMapping(path = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> createTransfers(
+        InputStream body,
+        @RequestParam(defaultValue = "CHUNK") BulkTransferService.Atomicity atomicity
+    ) throws IOException {
+        var items = jsonStreaming.readValues(body, BulkTransferService.Item.class);
+        if (atomicity == BulkTransferService.Atomicity.CHUNK) {
+            return jsonStreaming.ndjsonResults(() -> bulkTransferService.createInChunks(items));
+        }
+
+        var allItems = new ArrayList<BulkTransferService.Item>();
+        try (items) {
+            while (items.hasNext()) {
+                if (allItems.size() == bulkTransferService.getMaxAtomicTransfers()) {
+                    throw new ResponseStatusException(
+                        HttpStatus.CONTENT_TOO_LARGE,
+                        "At most " + bulkTransferService.getMaxAtomicTransfers() + " transfers can be committed atomically"
+                    );
+                }
+                allItems.add(items.next());
+            }
+        }
+        return jsonStreaming.ndjsonResults(() -> bulkTransferService.createAtomically(allItems).stream());
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllTransfers() {
+        return jsonStreaming.jsonArray(transferRepository::streamAll);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllTransfers() {
+        return jsonStreaming.ndjson(transferRepository::streamAll);
+    }
+
+    /**
+     * Loads transfers, such as migrated history, from a CSV ({@code id,from_account_id,to_account_id,amount,
+     * created_at} with a header line) or binary {@code COPY} body in one transaction. Balances are not adjusted.
+     */
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ImportResult importTransfers(InputStream body, @RequestParam(defaultValue = "CSV") CopyFormat format) {
+        return new ImportResult(transactionTemplate.execute(_ -> transferRepository.importAll(format, body)));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransfers(@RequestParam(defaultValue = "CSV") CopyFormat format) {
+        return ResponseEntity.ok()
+            .contentType(format.mediaType())
+            .body(out -> ReplicaRoutingDataSource.readFromReplica(() -> transferRepository.exportAll(format, out)));
+    }
+
+    @GetMapping(params = "limit")
+    public List<Transfer> getTransfersPage(
+        @RequestParam(required = false) UUID after,
+        @RequestParam int limit
+    ) {
+        return ReplicaRoutingDataSource.readFromReplica(
+            () -> transferRepository.findPage(after, Math.clamp(limit, 1, MAX_PAGE_SIZE))
+        );
     }
 
     public record CreateTransferRequest(UUID fromAccountId, UUID toAccountId, long amount) {
@@ -0,0 +1,29 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps monthly partitions of the transfer table ahead of the clock. Creating a partition is idempotent,
+ * so every node can run this; it runs at startup and then daily.
+ */
+@Component
+public class TransferPartitionMaintenance {
+
+    private final DSLContext dsl;
+    private final int monthsAhead;
+
+    public TransferPartitionMaintenance(DSLContext dsl, TransferProperties transferProperties) {
+        this.dsl = dsl;
+        this.monthsAhead = transferProperties.partitions().monthsAhead();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 0 3 * * *")
+    public void createUpcomingPartitions() {
+        dsl.execute("SELECT create_transfer_partitions(?)", monthsAhead);
+    }
+}
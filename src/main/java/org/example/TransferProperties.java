@@ -0,0 +1,87 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("transfers")
+public record TransferProperties(
+    @DefaultValue("VERSIONED") BalanceUpdateMode balanceUpdateMode,
+    @DefaultValue Bulk bulk,
+    @DefaultValue Partitions partitions,
+    @DefaultValue Ledger ledger,
+    @DefaultValue Idempotency idempotency
+) {
+
+    public enum BalanceUpdateMode {
+        /**
+         * Read both accounts and write the new balances with a version check.
+         */
+        VERSIONED,
+        /**
+         * Apply the amount as an atomic delta, guarded against overdraft, without reading the accounts.
+         */
+        DELTA,
+        /**
+         * Record the amount as an immutable ledger entry, guarded against overdraft, without updating the accounts.
+         * Entries are folded into the account balance by {@link LedgerCompactor}.
+         */
+        LEDGER
+    }
+
+    /**
+     * Limits of {@link BulkTransferService}. A unit of work binds four parameters per transfer row, and each
+     * transfer touches up to two accounts at four parameters each: three for the netted change and one for
+     * the lock. Both limits are capped at {@link #MAX_TRANSFERS}, so that a full unit of work stays within
+     * PostgreSQL's 65,535 bind parameters.
+     */
+    public record Bulk(
+        @DefaultValue("1000") int chunkSize,
+        @DefaultValue("5000") int maxAtomicTransfers
+    ) {
+
+        static final int BINDS_PER_TRANSFER = 4 + 2 * 4;
+        static final int MAX_TRANSFERS = 65_535 / BINDS_PER_TRANSFER;
+
+        public Bulk {
+            if (chunkSize < 1 || chunkSize > MAX_TRANSFERS) {
+                throw new IllegalArgumentException(
+                    "transfers.bulk.chunk-size must be between 1 and " + MAX_TRANSFERS + ", got " + chunkSize
+                );
+            }
+            if (maxAtomicTransfers < 1 || maxAtomicTransfers > MAX_TRANSFERS) {
+                throw new IllegalArgumentException(
+                    "transfers.bulk.max-atomic-transfers must be between 1 and " + MAX_TRANSFERS
+                        + ", got " + maxAtomicTransfers
+                );
+            }
+        }
+    }
+
+    /**
+     * Monthly partitions of the transfer table are created {@code monthsAhead} months in advance,
+     * so that new rows never land in the default partition.
+     */
+    public record Partitions(@DefaultValue("3") int monthsAhead) {
+    }
+
+    /**
+     * How often {@link LedgerCompactor} folds the entries of finished transactions into account balances.
+     * Reads sum the entries after the last snapshot, so a longer interval makes reads of busy accounts slower.
+     */
+    public record Ledger(@DefaultValue("1s") Duration compactionInterval) {
+    }
+
+    /**
+     * Transfers created with an {@code Idempotency-Key} keep it for {@code retention}; a repeated request within
+     * that time returns the original transfer. The last {@code cacheSize} keys of this node are answered
+     * from memory.
+     */
+    public record Idempotency(
+        @DefaultValue("100000") int cacheSize,
+        @DefaultValue("24h") Duration retention,
+        @DefaultValue("1h") Duration pruneInterval
+    ) {
+    }
+}
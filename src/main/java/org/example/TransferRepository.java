@@ -1,34 +1,236 @@
 package org.example;
 
+import org.jooq.Condition;
 import org.jooq.DSLContext;
+import org.jooq.Record4;
+import org.jooq.Records;
+import org.jooq.SelectJoinStep;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.SQLStateClass;
 import org.springframework.stereotype.Repository;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.example.jooq.Tables.TRANSFER;
+import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.noCondition;
+import static org.jooq.impl.DSL.param;
+import static org.jooq.impl.DSL.row;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.table;
 
 @Repository
 public class TransferRepository implements org.example.Repository<Transfer> {
 
+    private static final int FETCH_SIZE = 1_000;
+    private static final String COUNTERPARTY = "counterparty_account_id";
+
     private final DSLContext dsl;
+    private final RenderedQuery saveQuery;
 
     public TransferRepository(DSLContext dsl) {
         this.dsl = dsl;
+        this.saveQuery = new RenderedQuery(
+            dsl,
+            dsl.insertInto(TRANSFER, TRANSFER.ID, TRANSFER.FROM_ACCOUNT_ID, TRANSFER.TO_ACCOUNT_ID, TRANSFER.AMOUNT)
+                .values(
+                    param("id", TRANSFER.ID.getDataType()),
+                    param("from_account_id", TRANSFER.FROM_ACCOUNT_ID.getDataType()),
+                    param("to_account_id", TRANSFER.TO_ACCOUNT_ID.getDataType()),
+                    param("amount", TRANSFER.AMOUNT.getDataType())
+                ),
+            "id", "from_account_id", "to_account_id", "amount"
+        );
     }
 
     @Override
     public Transfer save(Transfer transfer) {
-        dsl.newRecord(TRANSFER, transfer).insert();
+        saveQuery.execute(transfer.id(), transfer.fromAccountId(), transfer.toAccountId(), transfer.amount());
         return transfer;
     }
 
+    @Override
+    public void saveAll(List<Transfer> transfers) {
+        dsl.insertInto(TRANSFER, TRANSFER.ID, TRANSFER.FROM_ACCOUNT_ID, TRANSFER.TO_ACCOUNT_ID, TRANSFER.AMOUNT)
+            .valuesOfRows(transfers.stream()
+                .map(transfer -> row(transfer.id(), transfer.fromAccountId(), transfer.toAccountId(), transfer.amount()))
+                .toList())
+            .execute();
+    }
+
     @Override
     public void update(Transfer transfer) {
         throw new UnsupportedOperationException("Transfer entity does not support versioned updates");
     }
 
+    private static Condition statementRange(OffsetDateTime from, OffsetDateTime to, StatementCursor after) {
+        var condition = noCondition();
+        if (from != null) {
+            condition = condition.and(TRANSFER.CREATED_AT.ge(from));
+        }
+        if (to != null) {
+            condition = condition.and(TRANSFER.CREATED_AT.lt(to));
+        }
+        if (after != null) {
+            // The plain bound on created_at is implied by the row comparison, but only it enables partition pruning
+            condition = condition
+                .and(TRANSFER.CREATED_AT.ge(after.createdAt()))
+                .and(row(TRANSFER.CREATED_AT, TRANSFER.ID).gt(after.createdAt(), after.transferId()));
+        }
+        return condition;
+    }
+
     public List<Transfer> findAll() {
-        return dsl.selectFrom(TRANSFER).fetchInto(Transfer.class);
+        return selectTransfers().fetch(Records.mapping(Transfer::new));
+    }
+
+    /**
+     * Returns up to {@code limit} transfers ordered by id, starting after the given id.
+     */
+    public List<Transfer> findPage(UUID after, int limit) {
+        return selectTransfers()
+            .where(after == null ? noCondition() : TRANSFER.ID.gt(after))
+            .orderBy(TRANSFER.ID)
+            .limit(limit)
+            .fetch(Records.mapping(Transfer::new));
+    }
+
+    /**
+     * Returns up to {@code limit} transfers from or to the account, created in {@code [from, to)} and after the
+     * cursor, ordered by creation time. Either bound may be {@code null}. Each direction is read from its own
+     * covering index as an ordered, limited range, and the time bounds let PostgreSQL skip partitions outside
+     * the range, so the cost does not grow with the size of the history.
+     */
+    public List<StatementEntry> findStatement(
+        UUID accountId,
+        OffsetDateTime from,
+        OffsetDateTime to,
+        StatementCursor after,
+        int limit
+    ) {
+        var sent = select(
+            TRANSFER.ID,
+            TRANSFER.TO_ACCOUNT_ID.as(COUNTERPARTY),
+            TRANSFER.AMOUNT.neg().as(TRANSFER.AMOUNT.getName()),
+            TRANSFER.CREATED_AT
+        )
+            .from(TRANSFER)
+            .where(TRANSFER.FROM_ACCOUNT_ID.eq(accountId))
+            .and(statementRange(from, to, after))
+            .orderBy(TRANSFER.CREATED_AT, TRANSFER.ID)
+            .limit(limit);
+        var received = select(
+            TRANSFER.ID,
+            TRANSFER.FROM_ACCOUNT_ID.as(COUNTERPARTY),
+            TRANSFER.AMOUNT,
+            TRANSFER.CREATED_AT
+        )
+            .from(TRANSFER)
+            .where(TRANSFER.TO_ACCOUNT_ID.eq(accountId))
+            .and(TRANSFER.FROM_ACCOUNT_ID.ne(accountId))
+            .and(statementRange(from, to, after))
+            .orderBy(TRANSFER.CREATED_AT, TRANSFER.ID)
+            .limit(limit);
+
+        var entries = sent.unionAll(received).asTable("entries");
+        var createdAt = entries.field(TRANSFER.CREATED_AT);
+        var id = entries.field(TRANSFER.ID);
+        return dsl.select(id, entries.field(COUNTERPARTY, UUID.class), entries.field(TRANSFER.AMOUNT), createdAt)
+            .from(entries)
+            .orderBy(createdAt, id)
+            .limit(limit)
+            .fetch(Records.mapping(StatementEntry::new));
+    }
+
+    /**
+     * Streams all transfers ordered by id from a server-side cursor. Must run inside a transaction,
+     * and the returned stream must be closed.
+     */
+    public Stream<Transfer> streamAll() {
+        return selectTransfers()
+            .orderBy(TRANSFER.ID)
+            .fetchSize(FETCH_SIZE)
+            .fetchStream()
+            .map(Records.mapping(Transfer::new));
+    }
+
+    /**
+     * Loads transfers, such as the history of migrated accounts, from {@code id,from_account_id,to_account_id,
+     * amount,created_at} rows. They are copied into a temporary table first, then inserted in one statement.
+     * Balances are not adjusted; the opening balances of the accounts move by the opposite of their net flow
+     * instead, so accounts imported with their current balance still reconcile. The transfers are not
+     * in the change feed. Ids repeated in the rows or already taken fail the whole import. Must run inside
+     * a transaction.
+     *
+     * @return the number of transfers loaded
+     */
+    public long importAll(CopyFormat format, InputStream in) {
+        dsl.execute("CREATE TEMPORARY TABLE transfer_import (LIKE transfer INCLUDING DEFAULTS) ON COMMIT DROP");
+        long imported = PgCopy.copyIn(
+            dsl, table(name("transfer_import")), format, in,
+            TRANSFER.ID, TRANSFER.FROM_ACCOUNT_ID, TRANSFER.TO_ACCOUNT_ID, TRANSFER.AMOUNT, TRANSFER.CREATED_AT
+        );
+        // Checked up front, so that a repeated id is reported as such rather than as whatever constraint trips first
+        dsl.resultQuery("""
+                SELECT id FROM transfer_import GROUP BY id HAVING count(*) > 1
+                UNION ALL
+                SELECT i.id FROM transfer_import i JOIN transfer_id t ON t.id = i.id
+                LIMIT 1""")
+            .fetchOptional(0, UUID.class)
+            .ifPresent(id -> {
+                throw new InvalidCopyDataException("transfer id " + id + " is repeated or already exists");
+            });
+        try {
+            dsl.execute("""
+                INSERT INTO transfer (id, from_account_id, to_account_id, amount, created_at)
+                SELECT id, from_account_id, to_account_id, amount, created_at FROM transfer_import""");
+        } catch (DataAccessException e) {
+            // Unknown accounts, and ids inserted concurrently, only show up against the existing rows
+            if (e.sqlStateClass() == SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION) {
+                throw new InvalidCopyDataException(e);
+            }
+            throw e;
+        }
+        dsl.execute("""
+            UPDATE account SET opening_balance = opening_balance - flow.net
+            FROM (
+                SELECT account_id, sum(amount) AS net
+                FROM (
+                    SELECT to_account_id AS account_id, amount FROM transfer_import
+                    UNION ALL
+                    SELECT from_account_id, -amount FROM transfer_import
+                ) flows
+                GROUP BY account_id
+            ) flow
+            WHERE account.id = flow.account_id""");
+        return imported;
+    }
+
+    /**
+     * Writes all transfers ordered by id, in the columns {@link #importAll} reads, from a single {@code COPY}.
+     *
+     * @return the number of transfers written
+     */
+    public long exportAll(CopyFormat format, OutputStream out) {
+        var query = dsl.select(
+                TRANSFER.ID,
+                TRANSFER.FROM_ACCOUNT_ID,
+                TRANSFER.TO_ACCOUNT_ID,
+                TRANSFER.AMOUNT,
+                TRANSFER.CREATED_AT
+            )
+            .from(TRANSFER)
+            .orderBy(TRANSFER.ID);
+        return PgCopy.copyOut(dsl, query, format, out);
+    }
+
+    private SelectJoinStep<Record4<UUID, UUID, UUID, Long>> selectTransfers() {
+        return dsl.select(TRANSFER.ID, TRANSFER.FROM_ACCOUNT_ID, TRANSFER.TO_ACCOUNT_ID, TRANSFER.AMOUNT).from(TRANSFER);
     }
 }
 
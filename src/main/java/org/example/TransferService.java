@@ -2,28 +2,157 @@ package org.example;
 
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import static java.util.UUID.randomUUID;
+import static org.example.TransferProperties.BalanceUpdateMode.VERSIONED;
 
 @Service
 public class TransferService {
 
-    private final AccountRepository accountRepository;
     private final UnitOfWork unitOfWork;
+    private final IdempotencyKeys idempotencyKeys;
+    private final TransferProperties transferProperties;
 
     public TransferService(
-        AccountRepository accountRepository,
-        UnitOfWork unitOfWork
+        UnitOfWork unitOfWork,
+        IdempotencyKeys idempotencyKeys,
+        TransferProperties transferProperties
     ) {
-        this.accountRepository = accountRepository;
         this.unitOfWork = unitOfWork;
+        this.idempotencyKeys = idempotencyKeys;
+        this.transferProperties = transferProperties;
     }
 
     public Transfer createTransfer(UUID fromAccountId, UUID toAccountId, long amount) {
-        return unitOfWork.executeRetriable(batch -> {
-            var fromAccount = accountRepository.findById(fromAccountId);
-            var toAccount = accountRepository.findById(toAccountId);
+        requireValid(fromAccountId, toAccountId, amount);
+        return unitOfWork.executeRetriable(
+            Account.class,
+            contendedIds(fromAccountId, toAccountId),
+            transferLogic(fromAccountId, toAccountId, amount)
+        );
+    }
+
+    public CompletableFuture<Transfer> createTransferAsync(UUID fromAccountId, UUID toAccountId, long amount) {
+        requireValid(fromAccountId, toAccountId, amount);
+        return unitOfWork.executeRetriableAsync(
+            Account.class,
+            contendedIds(fromAccountId, toAccountId),
+            transferLogic(fromAccountId, toAccountId, amount)
+        );
+    }
+
+    /**
+     * Creates the transfer at most once per {@code idempotencyKey}. A repeated request returns the transfer
+     * created by the first one: from memory if this node has seen the key recently, otherwise after the key's
+     * unique constraint rejects the repeated unit of work.
+     *
+     * @throws IdempotencyKeyReusedException if the key has been used for a different transfer
+     */
+    public Transfer createTransfer(String idempotencyKey, UUID fromAccountId, UUID toAccountId, long amount) {
+        requireValid(fromAccountId, toAccountId, amount);
+        if (idempotencyKey == null) {
+            return createTransfer(fromAccountId, toAccountId, amount);
+        }
+        var keyId = IdempotencyKey.idOf(idempotencyKey);
+        var cached = idempotencyKeys.findCached(keyId);
+        if (cached != null) {
+            return cached.replay(fromAccountId, toAccountId, amount);
+        }
+
+        try {
+            return unitOfWork.executeRetriable(
+                Account.class,
+                contendedIds(fromAccountId, toAccountId),
+                keyed(keyId, transferLogic(fromAccountId, toAccountId, amount))
+            );
+        } catch (DuplicateIdempotencyKeyException e) {
+            return replay(keyId, fromAccountId, toAccountId, amount);
+        }
+    }
+
+    public CompletableFuture<Transfer> createTransferAsync(
+        String idempotencyKey,
+        UUID fromAccountId,
+        UUID toAccountId,
+        long amount
+    ) {
+        requireValid(fromAccountId, toAccountId, amount);
+        if (idempotencyKey == null) {
+            return createTransferAsync(fromAccountId, toAccountId, amount);
+        }
+        var keyId = IdempotencyKey.idOf(idempotencyKey);
+        var cached = idempotencyKeys.findCached(keyId);
+        if (cached != null) {
+            return CompletableFuture.supplyAsync(() -> cached.replay(fromAccountId, toAccountId, amount), Runnable::run);
+        }
+
+        return unitOfWork.executeRetriableAsync(
+                Account.class,
+                contendedIds(fromAccountId, toAccountId),
+                keyed(keyId, transferLogic(fromAccountId, toAccountId, amount))
+            )
+            .exceptionallyCompose(e -> e.getCause() instanceof DuplicateIdempotencyKeyException
+                ? CompletableFuture.supplyAsync(() -> replay(keyId, fromAccountId, toAccountId, amount), Runnable::run)
+                : CompletableFuture.failedFuture(e));
+    }
+
+    /**
+     * @return why the transfer can never be made, or {@code null} if it may be
+     */
+    static String validate(UUID fromAccountId, UUID toAccountId, long amount) {
+        if (fromAccountId == null || toAccountId == null) {
+            return "Both fromAccountId and toAccountId are required";
+        }
+        if (fromAccountId.equals(toAccountId)) {
+            return "fromAccountId and toAccountId must differ";
+        }
+        if (amount <= 0) {
+            return "amount must be positive";
+        }
+        return null;
+    }
+
+    private static void requireValid(UUID fromAccountId, UUID toAccountId, long amount) {
+        var error = validate(fromAccountId, toAccountId, amount);
+        if (error != null) {
+            throw new InvalidTransferException(error);
+        }
+    }
+
+    private Transfer replay(UUID keyId, UUID fromAccountId, UUID toAccountId, long amount) {
+        var stored = idempotencyKeys.find(keyId);
+        if (stored == null) {
+            throw new IllegalStateException("Idempotency key " + keyId + " was reported as used but is not stored");
+        }
+        return stored.replay(fromAccountId, toAccountId, amount);
+    }
+
+    private static Function<Batch, Transfer> keyed(UUID keyId, Function<Batch, Transfer> transferLogic) {
+        return batch -> {
+            var transfer = transferLogic.apply(batch);
+            batch.insert(IdempotencyKey.of(keyId, transfer));
+            return transfer;
+        };
+    }
+
+    private List<UUID> contendedIds(UUID fromAccountId, UUID toAccountId) {
+        // Delta and ledger transfers never conflict, so there is nothing to queue for
+        return transferProperties.balanceUpdateMode() == VERSIONED ? List.of(fromAccountId, toAccountId) : List.of();
+    }
+
+    private Function<Batch, Transfer> transferLogic(UUID fromAccountId, UUID toAccountId, long amount) {
+        if (transferProperties.balanceUpdateMode() != VERSIONED) {
+            return deltaTransferLogic(fromAccountId, toAccountId, amount);
+        }
+
+        return batch -> {
+            var accounts = batch.findAll(Account.class, List.of(fromAccountId, toAccountId));
+            var fromAccount = accounts.get(fromAccountId);
+            var toAccount = accounts.get(toAccountId);
 
             var updatedFromAccount = fromAccount.withBalance(fromAccount.balance() - amount);
             var updatedToAccount = toAccount.withBalance(toAccount.balance() + amount);
@@ -40,7 +169,23 @@ public class TransferService {
             batch.insert(transfer);
 
             return transfer;
-        });
+        };
     }
-}
 
+    private static Function<Batch, Transfer> deltaTransferLogic(UUID fromAccountId, UUID toAccountId, long amount) {
+        return batch -> {
+            var transfer = new Transfer(
+                randomUUID(),
+                fromAccountId,
+                toAccountId,
+                amount
+            );
+
+            batch.adjustBalance(fromAccountId, -amount, 0L);
+            batch.adjustBalance(toAccountId, amount, BalanceAdjustment.NO_LIMIT);
+            batch.insert(transfer);
+
+            return transfer;
+        };
+    }
+}
@@ -1,56 +1,451 @@
 package org.example;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Comparator.comparing;
 
 @Component
 public class UnitOfWork {
 
-    private static final int MAX_RETRIES = 10;
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String DEADLOCK_DETECTED = "40P01";
+    // What PostgreSQL reports when statement_timeout fires
+    private static final String QUERY_CANCELED = "57014";
 
     private final TransactionTemplate transactionTemplate;
     private final RepositoryRegistry repositoryRegistry;
+    private final BatchFlusher batchFlusher;
+    private final GroupCommitter groupCommitter;
+    private final List<CommitListener> commitListeners;
+    private final UnitOfWorkMetrics metrics;
+    private final ContentionManager contentionManager;
+    private final ConflictRates conflictRates;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ExecutorService logicExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService commitExecutor;
+    private final Semaphore logicPermits;
+
+    private volatile RetryPolicy retryPolicy;
 
-    public UnitOfWork(TransactionTemplate transactionTemplate, RepositoryRegistry repositoryRegistry) {
+    public UnitOfWork(
+        TransactionTemplate transactionTemplate,
+        RepositoryRegistry repositoryRegistry,
+        BatchFlusher batchFlusher,
+        GroupCommitter groupCommitter,
+        List<CommitListener> commitListeners,
+        UnitOfWorkMetrics metrics,
+        ContentionManager contentionManager,
+        ConflictRates conflictRates,
+        ConcurrencyLimiter concurrencyLimiter,
+        UnitOfWorkProperties properties
+    ) {
         this.transactionTemplate = transactionTemplate;
         this.repositoryRegistry = repositoryRegistry;
+        this.batchFlusher = batchFlusher;
+        this.groupCommitter = groupCommitter;
+        this.commitListeners = commitListeners;
+        this.metrics = metrics;
+        this.contentionManager = contentionManager;
+        this.conflictRates = conflictRates;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.retryPolicy = properties.retry().toPolicy();
+        this.commitExecutor = Executors.newFixedThreadPool(
+            properties.async().commitThreads(),
+            Thread.ofPlatform().name("unit-of-work-commit-", 0).daemon().factory()
+        );
+        this.logicPermits = new Semaphore(properties.async().logicConcurrency());
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Replaces the policy used by {@link #executeRetriable(Function)}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
     }
 
     public <T> T executeRetriable(Function<Batch, T> idempotentRetriableLogic) {
+        return executeRetriable(retryPolicy, idempotentRetriableLogic);
+    }
+
+    public <T> T executeRetriable(RetryPolicy retryPolicy, Function<Batch, T> idempotentRetriableLogic) {
+        return execute(retryPolicy, null, List.of(), idempotentRetriableLogic, RequestDeadline.current(), false);
+    }
+
+    /**
+     * Declares the entities of the given type the unit of work is going to update. When the contention manager
+     * is enabled, units of work declaring the same ids on this node are queued instead of racing for the commit.
+     * When adaptive locking is enabled and one of the ids is hot, even the first attempt locks all of them up front.
+     */
+    public <T> T executeRetriable(
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Function<Batch, T> idempotentRetriableLogic
+    ) {
+        return executeRetriable(retryPolicy, contendedType, contendedIds, idempotentRetriableLogic);
+    }
+
+    public <T> T executeRetriable(
+        RetryPolicy retryPolicy,
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Function<Batch, T> idempotentRetriableLogic
+    ) {
+        return execute(
+            retryPolicy, contendedType, contendedIds, idempotentRetriableLogic, RequestDeadline.current(), false
+        );
+    }
+
+    public <T> CompletableFuture<T> executeRetriableAsync(Function<Batch, T> idempotentRetriableLogic) {
+        return executeRetriableAsync(retryPolicy, idempotentRetriableLogic);
+    }
+
+    public <T> CompletableFuture<T> executeRetriableAsync(
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Function<Batch, T> idempotentRetriableLogic
+    ) {
+        var deadline = RequestDeadline.current();
+        return CompletableFuture.supplyAsync(
+            () -> execute(retryPolicy, contendedType, contendedIds, idempotentRetriableLogic, deadline, true),
+            logicExecutor
+        );
+    }
+
+    /**
+     * Runs the unit of work on a virtual thread. The business logic runs under a bounded number of permits,
+     * and every commit is handed to a bounded pool of platform threads, so that callers blocked on reads
+     * can never take all database connections away from commits. The deadline of the calling request
+     * goes along.
+     */
+    public <T> CompletableFuture<T> executeRetriableAsync(
+        RetryPolicy retryPolicy,
+        Function<Batch, T> idempotentRetriableLogic
+    ) {
+        var deadline = RequestDeadline.current();
+        return CompletableFuture.supplyAsync(
+            () -> execute(retryPolicy, null, List.of(), idempotentRetriableLogic, deadline, true),
+            logicExecutor
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logicExecutor.shutdown();
+        commitExecutor.shutdown();
+    }
+
+    /**
+     * @param requestDeadline the deadline of the calling request, or {@code null} if it has none
+     */
+    private <T> T execute(
+        RetryPolicy retryPolicy,
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Function<Batch, T> idempotentRetriableLogic,
+        RequestDeadline requestDeadline,
+        boolean async
+    ) {
+        // Queued behind a hot id, a unit of work holds no permit of the limiter yet
+        try (var _ = contentionManager.admit(contendedIds, requestDeadline); var _ = concurrencyLimiter.acquire()) {
+            return executeAttempts(
+                retryPolicy, contendedType, contendedIds, idempotentRetriableLogic, requestDeadline, async
+            );
+        } catch (DeadlineExceededException e) {
+            metrics.recordDeadlineExceeded();
+            throw e;
+        }
+    }
+
+    private <T> T executeAttempts(
+        RetryPolicy retryPolicy,
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Function<Batch, T> idempotentRetriableLogic,
+        RequestDeadline requestDeadline,
+        boolean async
+    ) {
+        long deadline = System.nanoTime() + retryPolicy.timeout().toNanos();
+        var listener = retryPolicy.listener();
+        var identityMap = new IdentityMap(repositoryRegistry);
+        Map<UUID, Class<?>> writtenTypes = new HashMap<>();
+        var delay = Duration.ZERO;
         int attempt = 0;
         OptimisticLockException lastException = null;
 
-        while (attempt < MAX_RETRIES) {
+        while (attempt < retryPolicy.maxAttempts()) {
+            if (requestDeadline != null && requestDeadline.isExpired()) {
+                throw deadlineExceeded(attempt, lastException);
+            }
+            attempt++;
+            var batch = new Batch(identityMap);
+            var lockPlan = lockPlan(contendedType, contendedIds, writtenTypes);
+            long logicStart = System.nanoTime();
+            long commitStart = 0;
+            boolean committing = false;
             try {
-                var batch = new Batch();
-                T result = idempotentRetriableLogic.apply(batch);
-                commit(batch);
+                T result;
+                if (lockPlan.isEmpty()) {
+                    result = applyLogic(idempotentRetriableLogic, batch, requestDeadline, async, attempt == 1);
+                    commitStart = System.nanoTime();
+                    committing = true;
+                    metrics.recordLogic(commitStart - logicStart);
+                    if (async) {
+                        onCommitExecutor(() -> {
+                            commit(batch, requestDeadline);
+                            return null;
+                        });
+                    } else {
+                        commit(batch, requestDeadline);
+                    }
+                } else {
+                    // Logic and commit share one transaction holding the row locks, so the whole attempt is the commit
+                    commitStart = logicStart;
+                    committing = true;
+                    metrics.recordPessimistic();
+                    Supplier<T> locked =
+                        () -> executeLocked(lockPlan, identityMap, idempotentRetriableLogic, batch, requestDeadline);
+                    result = async ? onCommitExecutor(locked) : locked.get();
+                }
+                recordCommit(System.nanoTime() - commitStart);
+                commitListeners.forEach(commitListener -> commitListener.onCommitted(batch));
+                metrics.recordCompleted(attempt);
+                listener.onSuccess(attempt);
                 return result;
             } catch (OptimisticLockException e) {
+                if (committing) {
+                    recordCommit(System.nanoTime() - commitStart);
+                }
                 lastException = e;
-                attempt++;
+                identityMap.evict(e);
+                writtenTypes.putAll(batch.getWrittenTypes());
+                commitListeners.forEach(commitListener -> commitListener.onConflict(batch, e));
+                delay = retryPolicy.nextDelay(delay);
+                if (attempt == retryPolicy.maxAttempts() || System.nanoTime() + delay.toNanos() > deadline) {
+                    break;
+                }
+                if (requestDeadline != null && requestDeadline.remaining().compareTo(delay) <= 0) {
+                    throw deadlineExceeded(attempt, e);
+                }
+                listener.onConflict(attempt, e, delay);
+                backoff(delay, e);
+            } catch (RuntimeException e) {
+                if (!committing || !isStatementTimeout(e)) {
+                    throw e;
+                }
+                // A timed-out commit is the strongest sign of overload the limiter gets
+                recordCommit(System.nanoTime() - commitStart);
+                throw new DeadlineExceededException("The commit did not finish before the request deadline", e);
             }
         }
 
+        metrics.recordExhausted(attempt);
+        listener.onExhausted(attempt, lastException);
         throw new OptimisticLockException(
-            "Failed to complete operation after " + MAX_RETRIES + " attempts due to concurrent modifications",
+            "Failed to complete operation after " + attempt + " attempts due to concurrent modifications",
             lastException
         );
     }
 
-    private void commit(Batch batch) {
-        transactionTemplate.executeWithoutResult(_ -> {
-            try {
-                batch.executeInserts(repositoryRegistry);
-                batch.executeUpdates(repositoryRegistry);
-            } catch (OptimisticLockException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to commit unit of work", e);
+    private void commit(Batch batch, RequestDeadline requestDeadline) {
+        try {
+            commitOnce(batch, requestDeadline);
+        } catch (RuntimeException e) {
+            throw asConflict(e);
+        }
+    }
+
+    private void commitOnce(Batch batch, RequestDeadline requestDeadline) {
+        if (groupCommitter.isEnabled()) {
+            groupCommitter.commit(batch, requestDeadline);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(_ -> {
+                batchFlusher.limitStatementTime(requestDeadline);
+                batchFlusher.flush(batch);
+            });
+        } finally {
+            metrics.recordLockWindow(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs one attempt in a single transaction that first locks the planned rows in a fixed order
+     * and reads them fresh, so the version check at flush cannot fail for them.
+     */
+    private <T> T executeLocked(
+        Map<Class<?>, Set<UUID>> lockPlan,
+        IdentityMap identityMap,
+        Function<Batch, T> idempotentRetriableLogic,
+        Batch batch,
+        RequestDeadline requestDeadline
+    ) {
+        long start = System.nanoTime();
+        try {
+            return transactionTemplate.execute(_ -> {
+                batchFlusher.limitStatementTime(requestDeadline);
+                lockPlan.forEach(identityMap::lock);
+                T result = idempotentRetriableLogic.apply(batch);
+                batchFlusher.flush(batch);
+                return result;
+            });
+        } catch (RuntimeException e) {
+            throw asConflict(e);
+        } finally {
+            metrics.recordLockWindow(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the rows to lock up front, by type in the order the batch flushes them and by id within a type,
+     * or nothing if none of the ids the unit of work is known to write is hot. All of them are locked, declared
+     * ids with their declared type, rather than only the hot ones, so that a locked attempt never takes
+     * row locks out of order at flush.
+     */
+    private Map<Class<?>, Set<UUID>> lockPlan(
+        Class<? extends Entity> contendedType,
+        Collection<UUID> contendedIds,
+        Map<UUID, Class<?>> writtenTypes
+    ) {
+        if (!conflictRates.isEnabled()) {
+            return Map.of();
+        }
+        var ids = new HashSet<>(contendedIds);
+        ids.addAll(writtenTypes.keySet());
+        if (!conflictRates.anyHot(ids)) {
+            return Map.of();
+        }
+
+        Map<Class<?>, Set<UUID>> lockPlan = new TreeMap<>(comparing(Class::getName));
+        for (var id : contendedIds) {
+            lockPlan.computeIfAbsent(contendedType, _ -> new TreeSet<>()).add(id);
+        }
+        writtenTypes.forEach((id, type) -> lockPlan.computeIfAbsent(type, _ -> new TreeSet<>()).add(id));
+        return lockPlan;
+    }
+
+    /**
+     * The first attempt reads from a replica, if any; the version check at commit catches what it missed.
+     * Retries read from the primary, so that a lagging replica cannot make them fail the same way again.
+     */
+    private <T> T applyLogic(
+        Function<Batch, T> idempotentRetriableLogic,
+        Batch batch,
+        RequestDeadline requestDeadline,
+        boolean async,
+        boolean fromReplica
+    ) {
+        Supplier<T> logic = async
+            ? () -> applyWithPermit(idempotentRetriableLogic, batch, requestDeadline)
+            : () -> idempotentRetriableLogic.apply(batch);
+        return fromReplica ? ReplicaRoutingDataSource.readFromReplica(logic) : logic.get();
+    }
+
+    private <T> T applyWithPermit(
+        Function<Batch, T> idempotentRetriableLogic,
+        Batch batch,
+        RequestDeadline requestDeadline
+    ) {
+        try {
+            if (requestDeadline == null) {
+                logicPermits.acquire();
+            } else if (!logicPermits.tryAcquire(requestDeadline.remaining().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new DeadlineExceededException("The request deadline passed while waiting for a logic permit");
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to run the unit of work", e);
+        }
+        try {
+            return idempotentRetriableLogic.apply(batch);
+        } finally {
+            logicPermits.release();
+        }
     }
-}
 
+    private <R> R onCommitExecutor(Supplier<R> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, commitExecutor).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void recordCommit(long nanos) {
+        metrics.recordCommit(nanos);
+        concurrencyLimiter.onCommit(nanos);
+    }
+
+    private static DeadlineExceededException deadlineExceeded(int attemptsMade, OptimisticLockException lastConflict) {
+        return new DeadlineExceededException(
+            "The request deadline passed after " + attemptsMade + " attempts",
+            lastConflict
+        );
+    }
+
+    /**
+     * A deadlock or serialization failure rolls back the whole transaction like a failed version check,
+     * and retrying it is just as safe, so it is retried as a conflict whose ids are unknown.
+     */
+    private static RuntimeException asConflict(RuntimeException e) {
+        if (e instanceof OptimisticLockException || !hasSqlState(e, DEADLOCK_DETECTED, SERIALIZATION_FAILURE)) {
+            return e;
+        }
+        return new OptimisticLockException("The commit was rolled back by a deadlock or serialization failure", e);
+    }
+
+    private static boolean isStatementTimeout(Throwable e) {
+        return hasSqlState(e, QUERY_CANCELED);
+    }
+
+    private static boolean hasSqlState(Throwable e, String... sqlStates) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && List.of(sqlStates).contains(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void backoff(Duration delay, OptimisticLockException conflict) {
+        if (delay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockException("Interrupted while backing off after a conflict", conflict);
+        }
+    }
+}
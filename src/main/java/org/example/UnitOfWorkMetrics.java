@@ -0,0 +1,153 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the phases of {@link UnitOfWork}. Meters are registered once and
+ * updated without allocation on the success path, so they can stay on at full transfer rate.
+ */
+@Component
+public class UnitOfWorkMetrics implements CommitListener {
+
+    private static final int TRACKED_HOTSPOTS = 128;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer logic;
+    private final Timer commit;
+    private final Timer lockWindow;
+    private final DistributionSummary attempts;
+    private final DistributionSummary groupSize;
+    private final Counter exhausted;
+    private final Counter pessimistic;
+    private final Counter deadlineExceeded;
+    private final Map<String, Counter> conflictsByType = new ConcurrentHashMap<>();
+    private final ConflictHotspots hotspots = new ConflictHotspots(TRACKED_HOTSPOTS);
+
+    public UnitOfWorkMetrics(
+        MeterRegistry meterRegistry,
+        AccountCache accountCache,
+        ConcurrencyLimiter limiter,
+        ContentionManager contentionManager
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.logic = Timer.builder("unitofwork.logic")
+            .description("Time spent in the business logic of one attempt")
+            .register(meterRegistry);
+        this.commit = Timer.builder("unitofwork.commit")
+            .description("Time from the end of the business logic until the commit returned, including queueing")
+            .register(meterRegistry);
+        this.lockWindow = Timer.builder("unitofwork.lock.window")
+            .description("Duration of the database transaction that holds row locks")
+            .register(meterRegistry);
+        this.attempts = DistributionSummary.builder("unitofwork.attempts")
+            .description("Attempts made by one unit of work")
+            .register(meterRegistry);
+        this.groupSize = DistributionSummary.builder("unitofwork.group.size")
+            .description("Batches committed together in one transaction by group commit")
+            .register(meterRegistry);
+        this.exhausted = Counter.builder("unitofwork.exhausted")
+            .description("Units of work that failed after running out of retries")
+            .register(meterRegistry);
+        this.pessimistic = Counter.builder("unitofwork.pessimistic")
+            .description("Attempts that locked hot rows up front instead of checking versions at commit")
+            .register(meterRegistry);
+        this.deadlineExceeded = Counter.builder("unitofwork.deadline.exceeded")
+            .description("Units of work given up because the deadline of their request had passed")
+            .register(meterRegistry);
+
+        Gauge.builder("unitofwork.limit", limiter, ConcurrencyLimiter::getLimit)
+            .description("Units of work the concurrency limiter currently lets in at once")
+            .register(meterRegistry);
+        Gauge.builder("unitofwork.inflight", limiter, ConcurrencyLimiter::getInFlight)
+            .description("Units of work admitted by the concurrency limiter and not finished yet")
+            .register(meterRegistry);
+        FunctionCounter.builder("unitofwork.rejected", limiter, ConcurrencyLimiter::getRejected)
+            .description("Units of work turned away by the concurrency limiter")
+            .register(meterRegistry);
+        FunctionTimer.builder(
+                "unitofwork.contention.wait",
+                contentionManager,
+                ContentionManager::getAdmissions,
+                ContentionManager::getWaitNanos,
+                TimeUnit.NANOSECONDS
+            )
+            .description("Time units of work queued on this node behind others declaring the same ids")
+            .register(meterRegistry);
+        FunctionCounter.builder("unitofwork.contention.timeouts", contentionManager, ContentionManager::getTimeouts)
+            .description("Units of work that gave up queueing behind others declaring the same ids")
+            .register(meterRegistry);
+
+        FunctionCounter.builder("accounts.cache.hits", accountCache, AccountCache::getHits).register(meterRegistry);
+        FunctionCounter.builder("accounts.cache.misses", accountCache, AccountCache::getMisses).register(meterRegistry);
+        FunctionCounter.builder("accounts.cache.stale.retries", accountCache, AccountCache::getStaleRetries)
+            .register(meterRegistry);
+    }
+
+    public void recordLogic(long nanos) {
+        logic.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCommit(long nanos) {
+        commit.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLockWindow(long nanos) {
+        lockWindow.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCompleted(int attemptsMade) {
+        attempts.record(attemptsMade);
+    }
+
+    public void recordExhausted(int attemptsMade) {
+        attempts.record(attemptsMade);
+        exhausted.increment();
+    }
+
+    public void recordGroupSize(int batches) {
+        groupSize.record(batches);
+    }
+
+    public void recordPessimistic() {
+        pessimistic.increment();
+    }
+
+    public void recordDeadlineExceeded() {
+        deadlineExceeded.increment();
+    }
+
+    @Override
+    public void onConflict(Batch batch, OptimisticLockException conflict) {
+        if (conflict.getConflictingIds().isEmpty()) {
+            conflictsOf("unknown").increment();
+            return;
+        }
+        for (var id : conflict.getConflictingIds()) {
+            var type = batch.entityTypeOf(id);
+            conflictsOf(type == null ? "unknown" : type.getSimpleName()).increment();
+            hotspots.record(id);
+        }
+    }
+
+    public ConflictHotspots getHotspots() {
+        return hotspots;
+    }
+
+    private Counter conflictsOf(String entityType) {
+        return conflictsByType.computeIfAbsent(entityType, type -> Counter.builder("unitofwork.conflicts")
+            .description("Optimistic lock conflicts by entity type")
+            .tag("entity", type)
+            .register(meterRegistry));
+    }
+}
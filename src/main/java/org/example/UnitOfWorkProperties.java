@@ -0,0 +1,91 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("unit-of-work")
+public record UnitOfWorkProperties(
+    @DefaultValue Retry retry,
+    @DefaultValue GroupCommit groupCommit,
+    @DefaultValue Async async,
+    @DefaultValue Contention contention,
+    @DefaultValue Adaptive adaptive,
+    @DefaultValue Deadline deadline,
+    @DefaultValue Limiter limiter
+) {
+
+    public record Retry(
+        @DefaultValue("10") int maxAttempts,
+        @DefaultValue("2ms") Duration baseDelay,
+        @DefaultValue("100ms") Duration maxDelay,
+        @DefaultValue("10s") Duration timeout
+    ) {
+
+        public RetryPolicy toPolicy() {
+            return new RetryPolicy(maxAttempts, baseDelay, maxDelay, timeout, RetryListener.NONE);
+        }
+    }
+
+    public record GroupCommit(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("2ms") Duration window,
+        @DefaultValue("64") int maxBatches
+    ) {
+    }
+
+    /**
+     * Limits of {@link UnitOfWork#executeRetriableAsync}. Their sum should not exceed the connection pool size.
+     */
+    public record Async(
+        @DefaultValue("5") int commitThreads,
+        @DefaultValue("5") int logicConcurrency
+    ) {
+    }
+
+    /**
+     * Queues units of work on this node by the ids they declare, each waiting at most {@code maxWait},
+     * or until the deadline of its request if that comes first.
+     */
+    public record Contention(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("1s") Duration maxWait
+    ) {
+    }
+
+    /**
+     * Switches units of work touching ids whose recent share of conflicting attempts exceeds
+     * {@code conflictRateThreshold} to row locking. Older attempts count half as much after each {@code halfLife}.
+     */
+    public record Adaptive(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0.3") double conflictRateThreshold,
+        @DefaultValue("5s") Duration halfLife
+    ) {
+    }
+
+    /**
+     * Where the deadline of a request comes from: a {@code header} holding the time the caller is willing
+     * to wait, such as {@code 250ms} or {@code 250} for milliseconds, or else {@code defaultTimeout}.
+     * A zero {@code defaultTimeout} leaves requests without the header unbounded.
+     */
+    public record Deadline(
+        @DefaultValue("Request-Timeout") String header,
+        @DefaultValue("0s") Duration defaultTimeout
+    ) {
+    }
+
+    /**
+     * Bounds of the adaptive limit of units of work in flight; see {@link ConcurrencyLimiter}.
+     */
+    public record Limiter(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("20") int initialLimit,
+        @DefaultValue("4") int minLimit,
+        @DefaultValue("200") int maxLimit,
+        @DefaultValue("1.5") double tolerance,
+        @DefaultValue("0.2") double smoothing
+    ) {
+    }
+}
@@ -0,0 +1,118 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Records;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "accounts.cache.enabled=true")
+@ActiveProfiles("test")
+@Testcontainers
+class AccountCacheTest {
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private StripingService stripingService;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void findById_ofACachedAccount_shouldNotQuery() {
+        var id = createAccount(100L);
+        accountRepository.findById(id);
+        // Changed behind the cache, so only a query would see it
+        setBalance(id, 500L, 0L);
+        long hits = accountCache.getHits();
+
+        assertEquals(100L, accountRepository.findById(id).balance());
+        assertEquals(hits + 1, accountCache.getHits());
+    }
+
+    @Test
+    void committedTransfer_shouldReplaceCachedAccounts() {
+        var from = createAccount(100L);
+        var to = createAccount(0L);
+        accountRepository.findById(from);
+        accountRepository.findById(to);
+
+        transferService.createTransfer(from, to, 30L);
+        long misses = accountCache.getMisses();
+
+        assertEquals(new Account(from, 70L, 1L), accountRepository.findById(from));
+        assertEquals(new Account(to, 30L, 1L), accountRepository.findById(to));
+        assertEquals(misses, accountCache.getMisses(), "Committed accounts should be served from the cache");
+        assertEquals(readRow(from), accountRepository.findById(from), "Cached account should match its row");
+    }
+
+    @Test
+    void restripe_shouldEvictCachedAccount() {
+        var id = createAccount(100L);
+        accountRepository.findById(id);
+        setBalance(id, 500L, 0L);
+
+        stripingService.restripe(id, 0);
+
+        assertEquals(500L, accountRepository.findById(id).balance());
+    }
+
+    @Test
+    void transfer_fromAStaleCachedAccount_shouldRetryWithTheCurrentRow() {
+        var from = createAccount(100L);
+        var to = createAccount(0L);
+        accountRepository.findById(from);
+        // Another node moved the account on without this cache noticing
+        setBalance(from, 300L, 1L);
+        long staleRetries = accountCache.getStaleRetries();
+
+        transferService.createTransfer(from, to, 10L);
+
+        assertEquals(staleRetries + 1, accountCache.getStaleRetries());
+        assertEquals(new Account(from, 290L, 2L), accountRepository.findById(from));
+        assertEquals(new Account(from, 290L, 2L), readRow(from));
+        assertEquals(10L, readRow(to).balance());
+    }
+
+    private void setBalance(UUID id, long balance, long version) {
+        dsl.update(ACCOUNT)
+            .set(ACCOUNT.BALANCE, balance)
+            .set(ACCOUNT.VERSION, version)
+            .where(ACCOUNT.ID.eq(id))
+            .execute();
+    }
+
+    private Account readRow(UUID id) {
+        return dsl.select(ACCOUNT.ID, ACCOUNT.BALANCE, ACCOUNT.VERSION)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.eq(id))
+            .fetchOne(Records.mapping(Account::new));
+    }
+
+    private UUID createAccount(long balance) {
+        return accountRepository.save(new Account(UUID.randomUUID(), balance, 0L)).id();
+    }
+}
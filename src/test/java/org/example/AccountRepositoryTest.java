@@ -0,0 +1,125 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Records;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.util.Comparator.comparing;
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class AccountRepositoryTest {
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void saveAndFindById_shouldMatchTheDslPath() {
+        // Balances and versions differ, so that a value bound to the wrong placeholder shows
+        var rendered = new Account(UUID.randomUUID(), 123L, 7L);
+        var built = new Account(UUID.randomUUID(), 123L, 7L);
+
+        accountRepository.save(rendered);
+        accountRepository.saveAll(List.of(built));
+
+        assertEquals(rendered, readRow(rendered.id()));
+        assertEquals(built, readRow(built.id()));
+        assertEquals(rendered, accountRepository.findById(rendered.id()));
+        assertEquals(List.of(rendered), accountRepository.findByIds(List.of(rendered.id())));
+    }
+
+    @Test
+    void update_shouldMatchTheDslPath() {
+        var rendered = accountRepository.save(new Account(UUID.randomUUID(), 123L, 7L));
+        var built = saveInIdOrder(new Account(UUID.randomUUID(), 123L, 7L), new Account(UUID.randomUUID(), 5L, 2L));
+
+        accountRepository.update(rendered.withBalance(45L));
+        accountRepository.updateAll(built.stream().map(account -> account.withBalance(45L)).toList());
+
+        assertEquals(new Account(rendered.id(), 45L, 8L), readRow(rendered.id()));
+        for (var account : built) {
+            assertEquals(new Account(account.id(), 45L, account.version() + 1), readRow(account.id()));
+        }
+    }
+
+    @Test
+    void update_withAStaleVersion_shouldConflictLikeTheDslPath() {
+        var rendered = accountRepository.save(new Account(UUID.randomUUID(), 123L, 7L));
+        var built = saveInIdOrder(new Account(UUID.randomUUID(), 123L, 7L), new Account(UUID.randomUUID(), 5L, 2L));
+
+        var renderedConflict = assertThrows(OptimisticLockException.class,
+            () -> accountRepository.update(new Account(rendered.id(), 45L, 6L)));
+        var builtConflict = assertThrows(OptimisticLockException.class, () -> accountRepository.updateAll(
+            built.stream().map(account -> new Account(account.id(), 45L, account.version() - 1)).toList()));
+
+        assertEquals(Set.of(rendered.id()), renderedConflict.getConflictingIds());
+        assertEquals(Set.of(built.get(0).id(), built.get(1).id()), builtConflict.getConflictingIds());
+        assertEquals(rendered, readRow(rendered.id()));
+        for (var account : built) {
+            assertEquals(account, readRow(account.id()));
+        }
+    }
+
+    @Test
+    void updateAll_withOneStaleVersion_shouldConflictOnItAndWriteNothing() {
+        var accounts = saveInIdOrder(
+            new Account(UUID.randomUUID(), 100L, 1L),
+            new Account(UUID.randomUUID(), 200L, 2L),
+            new Account(UUID.randomUUID(), 300L, 3L)
+        );
+        var stale = accounts.get(1);
+        var updates = accounts.stream()
+            .map(account -> account == stale ? account.withVersion(account.version() - 1) : account)
+            .map(account -> account.withBalance(0L))
+            .toList();
+
+        // The conflict rolls back the transaction of the flush, rows matched by the same statement included
+        var conflict = assertThrows(OptimisticLockException.class, () -> transactionTemplate.executeWithoutResult(
+            _ -> accountRepository.updateAll(updates)));
+
+        assertEquals(Set.of(stale.id()), conflict.getConflictingIds());
+        for (var account : accounts) {
+            assertEquals(account, readRow(account.id()));
+        }
+    }
+
+    // Grouped updates expect accounts in id order
+    private List<Account> saveInIdOrder(Account... accounts) {
+        return Stream.of(accounts).map(accountRepository::save).sorted(comparing(Account::id)).toList();
+    }
+
+    private Account readRow(UUID id) {
+        return dsl.select(ACCOUNT.ID, ACCOUNT.BALANCE, ACCOUNT.VERSION)
+            .from(ACCOUNT)
+            .where(ACCOUNT.ID.eq(id))
+            .fetchOne(Records.mapping(Account::new));
+    }
+}
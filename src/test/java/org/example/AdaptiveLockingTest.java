@@ -0,0 +1,121 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "unit-of-work.adaptive.enabled=true",
+    "unit-of-work.adaptive.conflict-rate-threshold=0.1"
+})
+@ActiveProfiles("test")
+@Testcontainers
+class AdaptiveLockingTest {
+
+    private static final int THREADS_NUM = 16;
+    private static final int NUMBER_OF_TRANSFERS = 1_000;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private ConflictRates conflictRates;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void transfersBetweenHotAccounts_shouldSwitchToRowLockingAndMaintainBalanceConservation() {
+        var first = accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L)).id();
+        var second = accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L)).id();
+        double pessimisticBefore = meterRegistry.counter("unitofwork.pessimistic").count();
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var from = i % 2 == 0 ? first : second;
+                var to = i % 2 == 0 ? second : first;
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(from, to, 10L), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        var totalBalance = accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+        assertEquals(INITIAL_BALANCE * 2, totalBalance, "Total balance should remain the same.");
+        assertEquals(NUMBER_OF_TRANSFERS, dsl.fetchCount(TRANSFER), "All executed transfers should be present");
+        assertTrue(
+            meterRegistry.counter("unitofwork.pessimistic").count() > pessimisticBefore,
+            "Hot accounts should have been locked up front"
+        );
+        assertTrue(conflictRates.rateOf(first) > 0, "Conflicts on the hot account should have been tracked");
+    }
+
+    @Test
+    void transfersBetweenHotAndColdAccount_shouldLockBothInIdOrderWithoutDeadlocks() {
+        var hot = accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L));
+        var cold = accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L)).id();
+        makeHot(hot);
+        assertFalse(conflictRates.anyHot(List.of(cold)), "Only one of the accounts should be hot");
+        double pessimisticBefore = meterRegistry.counter("unitofwork.pessimistic").count();
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var from = i % 2 == 0 ? hot.id() : cold;
+                var to = i % 2 == 0 ? cold : hot.id();
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(from, to, 10L), executor));
+            }
+            // A deadlock would fail a transfer instead of retrying it
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        var totalBalance = accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+        assertEquals(INITIAL_BALANCE * 2, totalBalance, "Total balance should remain the same.");
+        assertEquals(NUMBER_OF_TRANSFERS, dsl.fetchCount(TRANSFER), "All executed transfers should be present");
+        assertTrue(
+            meterRegistry.counter("unitofwork.pessimistic").count() > pessimisticBefore,
+            "The hot account should have been locked up front"
+        );
+    }
+
+    // Reports enough conflicts on the account for it to be locked up front by the next transfers
+    private void makeHot(Account account) {
+        var batch = new Batch(new IdentityMap(null));
+        batch.update(account);
+        for (int i = 0; i < 8; i++) {
+            conflictRates.onConflict(batch, new OptimisticLockException("Conflict", Set.of(account.id())));
+        }
+        assertTrue(conflictRates.anyHot(List.of(account.id())));
+    }
+}
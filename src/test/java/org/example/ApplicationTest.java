@@ -6,11 +6,27 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
 
+import static org.example.BulkTransferService.Status.CREATED;
+import static org.example.BulkTransferService.Status.FAILED;
+import static org.example.BulkTransferService.Status.REJECTED;
 import static org.example.jooq.Tables.ACCOUNT;
 import static org.example.jooq.Tables.TRANSFER;
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +43,9 @@ class ApplicationTest {
     @Autowired
     private DSLContext dsl;
 
+    @Autowired
+    private ChangeFeedRepository changeFeedRepository;
+
     private TestHelper testHelper;
 
     @BeforeEach
@@ -117,5 +136,328 @@ class ApplicationTest {
         assertEquals(account2Id, foundTransfer.toAccountId(), "Transfer toAccountId should match");
         assertEquals(transferAmount, foundTransfer.amount(), "Transfer amount should match");
     }
-}
 
+    @Test
+    void createTransfer_toTheSameAccount_shouldBeRejected() {
+        testHelper = new TestHelper(restTemplate);
+        var account = testHelper.createAccount(1000L);
+        Map<String, Object> request = Map.of(
+            "fromAccountId", account.id().toString(),
+            "toAccountId", account.id().toString(),
+            "amount", 100L
+        );
+
+        // When - Send money from an account to itself, synchronously and asynchronously
+        var response = restTemplate.postForEntity("/transfers", request, String.class);
+        var asyncResponse = restTemplate.postForEntity("/transfers/async", request, String.class);
+
+        // Then - Both are rejected and the balance is unchanged
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, asyncResponse.getStatusCode());
+        assertEquals(0, testHelper.getAllTransfers().size());
+        var accounts = testHelper.getAllAccounts();
+        assertTrue(accounts.stream().anyMatch(a -> a.id().equals(account.id()) && a.balance() == 1000L));
+    }
+
+    @Test
+    void restripe_withNegativeStripesOrOutsideDeltaMode_shouldBeRejected() {
+        testHelper = new TestHelper(restTemplate);
+        var account = testHelper.createAccount(1000L);
+
+        // When - Ask for a negative number of stripes, then for stripes in the default VERSIONED mode
+        var negative = restripe(account.id(), -1);
+        var versioned = restripe(account.id(), 4);
+
+        // Then - Neither is applied, and turning striping off stays possible
+        assertEquals(HttpStatus.BAD_REQUEST, negative.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, versioned.getStatusCode());
+        assertEquals(HttpStatus.OK, restripe(account.id(), 0).getStatusCode());
+        testHelper.createTransfer(account.id(), testHelper.createAccount(0L).id(), 100L);
+    }
+
+    @Test
+    void createTransferAsync_shouldUpdateAccountBalances() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = testHelper.createAccount(1000L);
+        var account2 = testHelper.createAccount(1000L);
+
+        // When - Create transfer through the async endpoint
+        var transfer = testHelper.createTransferAsync(account1.id(), account2.id(), 300L);
+
+        // Then - Transfer is committed before the response is returned
+        assertNotNull(transfer.id());
+        var accounts = testHelper.getAllAccounts();
+        assertTrue(accounts.stream().anyMatch(a -> a.id().equals(account1.id()) && a.balance() == 700L));
+        assertTrue(accounts.stream().anyMatch(a -> a.id().equals(account2.id()) && a.balance() == 1300L));
+    }
+
+    @Test
+    void createTransfer_withIdempotencyKey_shouldCreateTransferOnlyOnce() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = testHelper.createAccount(1000L);
+        var account2 = testHelper.createAccount(1000L);
+        var key = UUID.randomUUID().toString();
+
+        // When - The client retries the same request twice
+        var first = testHelper.createTransfer(key, account1.id(), account2.id(), 100L);
+        var second = testHelper.createTransfer(key, account1.id(), account2.id(), 100L);
+        var third = testHelper.createTransfer(key, account1.id(), account2.id(), 100L);
+
+        // Then - Every response carries the one transfer that was created
+        assertEquals(HttpStatus.CREATED, first.getStatusCode());
+        assertNotNull(first.getBody());
+        assertEquals(first.getBody(), second.getBody());
+        assertEquals(first.getBody(), third.getBody());
+        assertEquals(1, testHelper.getAllTransfers().size());
+        var accounts = testHelper.getAllAccounts();
+        assertTrue(accounts.stream().anyMatch(a -> a.id().equals(account1.id()) && a.balance() == 900L));
+        assertTrue(accounts.stream().anyMatch(a -> a.id().equals(account2.id()) && a.balance() == 1100L));
+
+        // When - The key is reused for a different transfer
+        var reused = testHelper.createTransfer(key, account1.id(), account2.id(), 200L);
+
+        // Then - It is rejected
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+        assertEquals(1, testHelper.getAllTransfers().size());
+    }
+
+    @Test
+    void listAccounts_shouldSupportKeysetPagesAndNdjsonStream() {
+        testHelper = new TestHelper(restTemplate);
+        var createdIds = new HashSet<UUID>();
+        for (int i = 0; i < 5; i++) {
+            createdIds.add(testHelper.createAccount(1000L).id());
+        }
+
+        // When - Walk all pages of size 2
+        var pagedIds = new ArrayList<UUID>();
+        UUID after = null;
+        List<Account> page;
+        do {
+            page = testHelper.getAccountsPage(after, 2);
+            page.forEach(account -> pagedIds.add(account.id()));
+            after = page.isEmpty() ? after : page.getLast().id();
+        } while (page.size() == 2);
+
+        // Then - Every account is returned exactly once, in id order
+        assertEquals(createdIds, new HashSet<>(pagedIds));
+        assertEquals(createdIds.size(), pagedIds.size());
+        assertEquals(pagedIds.stream().sorted().toList(), pagedIds);
+
+        // When - Stream all accounts as NDJSON
+        var headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.APPLICATION_NDJSON));
+        var response = restTemplate.exchange("/accounts", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        // Then - One line per account
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(createdIds.size(), response.getBody().lines().filter(line -> !line.isBlank()).count());
+    }
+
+    @Test
+    void createTransfersInBatch_shouldNetPerAccountAndReportEachItem() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = testHelper.createAccount(100L);
+        var account2 = testHelper.createAccount(0L);
+        var account3 = testHelper.createAccount(0L);
+
+        // When - account2 pays on money it only receives within the same batch, and one item is invalid
+        var results = testHelper.createTransfers(List.of(
+            transferItem(account1.id(), account2.id(), 100L),
+            transferItem(account2.id(), account3.id(), 60L),
+            transferItem(account1.id(), account1.id(), 5L),
+            transferItem(account3.id(), account1.id(), 10L)
+        ), "CHUNK");
+
+        // Then - Valid items are created with the netted balances, the invalid one is rejected
+        assertEquals(4, results.size());
+        assertEquals(
+            List.of(CREATED, CREATED, REJECTED, CREATED),
+            results.stream().map(BulkTransferService.ItemResult::status).toList()
+        );
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(BulkTransferService.ItemResult::index).toList());
+        assertEquals(3, testHelper.getAllTransfers().size());
+        var balances = new HashMap<UUID, Long>();
+        testHelper.getAllAccounts().forEach(account -> balances.put(account.id(), account.balance()));
+        assertEquals(10L, balances.get(account1.id()));
+        assertEquals(40L, balances.get(account2.id()));
+        assertEquals(50L, balances.get(account3.id()));
+
+        // When - An all-or-nothing batch contains an overdraft
+        results = testHelper.createTransfers(List.of(
+            transferItem(account2.id(), account1.id(), 10L),
+            transferItem(account3.id(), account1.id(), 1_000L)
+        ), "ALL");
+
+        // Then - Nothing is committed
+        assertEquals(List.of(FAILED, FAILED), results.stream().map(BulkTransferService.ItemResult::status).toList());
+        assertEquals("Insufficient funds", results.getFirst().error());
+        assertEquals(3, testHelper.getAllTransfers().size());
+    }
+
+    @Test
+    void getStatement_shouldReturnSignedEntriesOfOneAccountInKeysetPages() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = testHelper.createAccount(1000L);
+        var account2 = testHelper.createAccount(1000L);
+        var account3 = testHelper.createAccount(1000L);
+        var sent = testHelper.createTransfer(account1.id(), account2.id(), 100L);
+        testHelper.createTransfer(account2.id(), account3.id(), 50L);
+        var received = testHelper.createTransfer(account3.id(), account1.id(), 20L);
+
+        // When - Walk the statement of account1 one entry at a time
+        var entries = new ArrayList<StatementEntry>();
+        String after = null;
+        AccountController.StatementPage page;
+        do {
+            page = testHelper.getStatement(account1.id(), after, 1);
+            entries.addAll(page.entries());
+            after = page.next();
+        } while (after != null);
+
+        // Then - Only its own transfers, signed from its point of view, oldest first
+        assertEquals(List.of(sent.id(), received.id()), entries.stream().map(StatementEntry::transferId).toList());
+        assertEquals(List.of(-100L, 20L), entries.stream().map(StatementEntry::amount).toList());
+        assertEquals(
+            List.of(account2.id(), account3.id()),
+            entries.stream().map(StatementEntry::counterpartyAccountId).toList()
+        );
+    }
+
+    @Test
+    void getChanges_shouldLongPollCommittedWritesInSequenceOrder() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = testHelper.createAccount(1000L);
+        var account2 = testHelper.createAccount(1000L);
+        long start = changeFeedRepository.lastSequence();
+
+        // When - A transfer commits while a consumer waits for changes
+        var transfer = testHelper.createTransfer(account1.id(), account2.id(), 100L);
+        var ids = Set.of(transfer.id().toString(), account1.id().toString(), account2.id().toString());
+        var seqs = new ArrayList<Long>();
+        var changes = new HashSet<String>();
+        long after = start;
+        while (seqs.size() < 3) {
+            var batch = testHelper.getChanges(after, 5);
+            assertFalse(batch.get("events").isEmpty(), "Changes should arrive before the long poll times out");
+            // Writes of earlier tests may still be numbered after start
+            batch.get("events").forEach(event -> {
+                if (ids.contains(event.get("entityId").asText())) {
+                    seqs.add(event.get("seq").asLong());
+                    changes.add(event.get("operation").asText() + " " + event.get("entityId").asText());
+                }
+            });
+            after = batch.get("next").asLong();
+        }
+
+        // Then - The transfer and both balance updates are delivered once, in sequence order
+        assertEquals(3, seqs.size());
+        assertEquals(seqs.stream().sorted().toList(), seqs);
+        assertEquals(
+            Set.of("INSERT " + transfer.id(), "UPDATE " + account1.id(), "UPDATE " + account2.id()),
+            changes
+        );
+    }
+
+    @Test
+    void importCsv_and_exportCsv_shouldLoadAllRowsOrNone() {
+        testHelper = new TestHelper(restTemplate);
+        var account1 = UUID.randomUUID();
+        var account2 = UUID.randomUUID();
+        var transfer = UUID.randomUUID();
+
+        // When - Import two accounts and the history between them
+        var accounts = testHelper.importCsv("/accounts/import", "id,balance\n" + account1 + ",100\n" + account2 + ",250\n");
+        var transfers = testHelper.importCsv(
+            "/transfers/import",
+            "id,from_account_id,to_account_id,amount,created_at\n"
+                + transfer + "," + account1 + "," + account2 + ",50,2024-01-15T10:00:00Z\n"
+        );
+
+        // Then - Every row is loaded and exported back as is
+        assertEquals(HttpStatus.CREATED, accounts.getStatusCode());
+        assertTrue(accounts.getBody().contains("\"imported\":2"));
+        assertEquals(HttpStatus.CREATED, transfers.getStatusCode());
+        var exportedAccounts = testHelper.exportCsv("/accounts/export");
+        assertEquals(
+            Set.of("id,balance", account1 + ",100", account2 + ",250"),
+            Set.of(exportedAccounts.split("\n"))
+        );
+        assertTrue(testHelper.exportCsv("/transfers/export").contains(transfer + "," + account1 + "," + account2 + ",50,"));
+
+        // When - The export is imported into an empty database
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+        var reimported = testHelper.importCsv("/accounts/import", exportedAccounts);
+
+        // Then - It round-trips
+        assertEquals(HttpStatus.CREATED, reimported.getStatusCode());
+        assertEquals(exportedAccounts, testHelper.exportCsv("/accounts/export"));
+
+        // When - Import a file that repeats an existing id
+        var duplicate = testHelper.importCsv("/accounts/import", "id,balance\n" + UUID.randomUUID() + ",1\n" + account1 + ",1\n");
+
+        // Then - Nothing of it is loaded
+        assertEquals(HttpStatus.BAD_REQUEST, duplicate.getStatusCode());
+        assertEquals(2, dsl.fetchCount(ACCOUNT));
+    }
+
+    @Test
+    void importCsv_withExistingTransferIdInAnotherMonth_shouldBeRejected() {
+        testHelper = new TestHelper(restTemplate);
+        var from = testHelper.createAccount(100L);
+        var to = testHelper.createAccount(0L);
+        var transfer = testHelper.createTransfer(from.id(), to.id(), 10L);
+
+        // When - Import the id of a transfer created now as one created years ago, in another partition
+        var response = testHelper.importCsv(
+            "/transfers/import",
+            "id,from_account_id,to_account_id,amount,created_at\n"
+                + transfer.id() + "," + from.id() + "," + to.id() + ",10,2020-01-15T10:00:00Z\n"
+        );
+
+        // Then - Transfer ids stay unique across partitions
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(1, dsl.fetchCount(TRANSFER));
+    }
+
+    @Test
+    void importCsv_repeatingTransferId_shouldLoadNothing() {
+        testHelper = new TestHelper(restTemplate);
+        var from = testHelper.createAccount(100L);
+        var to = testHelper.createAccount(0L);
+        var transfer = UUID.randomUUID();
+
+        // When - The same id comes twice, in different months
+        var response = testHelper.importCsv(
+            "/transfers/import",
+            "id,from_account_id,to_account_id,amount,created_at\n"
+                + UUID.randomUUID() + "," + from.id() + "," + to.id() + ",5,2024-01-15T10:00:00Z\n"
+                + transfer + "," + from.id() + "," + to.id() + ",10,2024-01-15T10:00:00Z\n"
+                + transfer + "," + from.id() + "," + to.id() + ",10,2024-02-15T10:00:00Z\n"
+        );
+
+        // Then - Nothing of it is loaded
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(0, dsl.fetchCount(TRANSFER));
+    }
+
+    private ResponseEntity<String> restripe(UUID accountId, int stripes) {
+        return restTemplate.exchange(
+            "/accounts/{id}/stripes",
+            HttpMethod.PUT,
+            new HttpEntity<>(Map.of("stripes", stripes)),
+            String.class,
+            accountId
+        );
+    }
+
+    private static Map<String, Object> transferItem(UUID fromAccountId, UUID toAccountId, long amount) {
+        return Map.of(
+            "fromAccountId", fromAccountId.toString(),
+            "toAccountId", toAccountId.toString(),
+            "amount", amount
+        );
+    }
+}
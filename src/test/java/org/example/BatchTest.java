@@ -0,0 +1,81 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Only pending writes are read, so the identity map never needs a repository
+class BatchTest {
+
+    private final Batch batch = new Batch(new IdentityMap(null));
+
+    @Test
+    void update_shouldMergeRepeatedUpdatesIntoTheFinalState() {
+        var account = new Account(UUID.randomUUID(), 100L, 3L);
+
+        batch.update(account.withBalance(90L));
+        batch.update(batch.find(Account.class, account.id()).withBalance(80L));
+
+        assertEquals(List.of(new Account(account.id(), 80L, 3L)), batch.getUpdates(Account.class));
+    }
+
+    @Test
+    void update_fromAStaleCopyOfAPendingEntity_shouldBeRejected() {
+        var account = new Account(UUID.randomUUID(), 100L, 3L);
+
+        // Both derive from the same read, as a transfer from an account to itself would
+        batch.update(account.withBalance(90L));
+
+        assertThrows(IllegalStateException.class, () -> batch.update(account.withBalance(110L)));
+        assertEquals(List.of(new Account(account.id(), 90L, 3L)), batch.getUpdates(Account.class));
+    }
+
+    @Test
+    void update_shouldRejectAnotherVersionOfAPendingEntity() {
+        var account = new Account(UUID.randomUUID(), 100L, 3L);
+        batch.update(account.withBalance(90L));
+
+        assertThrows(IllegalStateException.class, () -> batch.update(account.withVersion(4L)));
+    }
+
+    @Test
+    void update_shouldKeepUpdatesSortedById() {
+        var accounts = List.of(
+            new Account(UUID.randomUUID(), 1L, 0L),
+            new Account(UUID.randomUUID(), 2L, 0L),
+            new Account(UUID.randomUUID(), 3L, 0L),
+            new Account(UUID.randomUUID(), 4L, 0L)
+        );
+        accounts.forEach(batch::update);
+
+        var ids = batch.getUpdates(Account.class).stream().map(Account::id).toList();
+        assertEquals(accounts.stream().map(Account::id).sorted().toList(), ids);
+    }
+
+    @Test
+    void update_ofAPendingInsert_shouldReplaceTheInsertedState() {
+        var account = new Account(UUID.randomUUID(), 100L, 0L);
+        batch.insert(account);
+
+        batch.update(account.withBalance(50L));
+
+        assertEquals(List.of(account.withBalance(50L)), batch.getInserts(Account.class));
+        assertTrue(batch.getUpdates(Account.class).isEmpty());
+    }
+
+    @Test
+    void insert_shouldRejectAnIdAlreadyRegistered() {
+        var transfer = new Transfer(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 10L);
+        batch.insert(transfer);
+        var account = new Account(UUID.randomUUID(), 100L, 0L);
+        batch.update(account);
+
+        assertThrows(IllegalStateException.class, () -> batch.insert(transfer));
+        assertThrows(IllegalStateException.class, () -> batch.insert(account));
+    }
+}
@@ -1,6 +1,7 @@
 package org.example;
 
 import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,11 +17,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.example.jooq.Tables.ACCOUNT;
 import static org.example.jooq.Tables.TRANSFER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -35,6 +38,8 @@ class ConcurrentTransferTest {
     private static final long MAX_TRANSFER_AMOUNT = 50L;
     private static final long MIN_ACCOUNT_BALANCE = MAX_TRANSFER_AMOUNT * NUMBER_OF_TRANSFERS + 100L;
     private static final long MAX_ACCOUNT_BALANCE = MAX_TRANSFER_AMOUNT * NUMBER_OF_TRANSFERS + 10_000L;
+    // On average; retries with backoff should keep most transfers to their first attempt
+    private static final double MAX_ATTEMPTS_PER_TRANSFER = 2.0;
 
     @Autowired
     private TestRestTemplate restTemplate;
@@ -42,14 +47,43 @@ class ConcurrentTransferTest {
     @Autowired
     private DSLContext dsl;
 
+    @Autowired
+    private UnitOfWork unitOfWork;
+
     private TestHelper testHelper;
 
+    private RetryPolicy defaultRetryPolicy;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
     @BeforeEach
     void cleanDatabase() {
         dsl.truncate(TRANSFER).cascade().execute();
         dsl.truncate(ACCOUNT).cascade().execute();
     }
 
+    @BeforeEach
+    void countAttempts() {
+        defaultRetryPolicy = unitOfWork.getRetryPolicy();
+        unitOfWork.setRetryPolicy(defaultRetryPolicy.withListener(new RetryListener() {
+            @Override
+            public void onSuccess(int attemptsMade) {
+                attempts.add(attemptsMade);
+            }
+
+            @Override
+            public void onExhausted(int attemptsMade, OptimisticLockException exception) {
+                attempts.add(attemptsMade);
+                exhausted.increment();
+            }
+        }));
+    }
+
+    @AfterEach
+    void restoreRetryPolicy() {
+        unitOfWork.setRetryPolicy(defaultRetryPolicy);
+    }
+
     @Test
     void concurrentTransfers_shouldMaintainBalanceConservation() {
         testHelper = new TestHelper(restTemplate);
@@ -61,6 +95,9 @@ class ConcurrentTransferTest {
 
         assertEquals(NUMBER_OF_TRANSFERS, testHelper.getAllTransfers().size(), "All executed transfers should be present");
         assertEquals(initialTotalBalance, calculateTotalBalance(testHelper.getAllAccounts()), "Total balance should remain the same.");
+        assertEquals(0, exhausted.sum(), "No transfer should run out of retries");
+        double attemptsPerTransfer = attempts.sum() / (double) NUMBER_OF_TRANSFERS;
+        assertTrue(attemptsPerTransfer < MAX_ATTEMPTS_PER_TRANSFER, "Attempts per transfer: " + attemptsPerTransfer);
     }
 
     private List<Account> createAccounts() {
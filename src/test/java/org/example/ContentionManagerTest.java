@@ -0,0 +1,112 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "unit-of-work.contention.enabled=true",
+    "unit-of-work.contention.max-wait=500ms"
+})
+@ActiveProfiles("test")
+@Testcontainers
+class ContentionManagerTest {
+
+    private static final int THREADS_NUM = 8;
+
+    @Autowired
+    private UnitOfWork unitOfWork;
+
+    @Autowired
+    private ContentionManager contentionManager;
+
+    @Test
+    void unitsOfWork_onTheSameContendedId_shouldRunOneAtATime() {
+        var ids = List.of(UUID.randomUUID());
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS_NUM; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> unitOfWork.executeRetriable(Account.class, ids, _ -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(Duration.ofMillis(10));
+                    running.decrementAndGet();
+                    return null;
+                }), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertEquals(1, maxRunning.get(), "Units of work on the same id should not overlap");
+    }
+
+    @Test
+    void admit_whileTheIdIsHeld_shouldGiveUpInsteadOfWaitingForever() throws InterruptedException {
+        var ids = List.of(UUID.randomUUID());
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        long timeouts = contentionManager.getTimeouts();
+
+        var holder = unitOfWork.executeRetriableAsync(Account.class, ids, _ -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThrows(OverloadedException.class, () -> unitOfWork.executeRetriable(Account.class, ids, _ -> null));
+            // A deadline earlier than maxWait is what the caller is told about
+            try (var _ = RequestDeadline.enter(RequestDeadline.after(Duration.ofMillis(50)))) {
+                assertThrows(DeadlineExceededException.class,
+                    () -> unitOfWork.executeRetriable(Account.class, ids, _ -> null));
+            }
+            // Other ids are not held up
+            assertNull(unitOfWork.executeRetriable(Account.class, List.of(UUID.randomUUID()), _ -> null));
+        });
+        assertEquals(timeouts + 2, contentionManager.getTimeouts());
+
+        release.countDown();
+        holder.join();
+        // The id is given back once the holder is done
+        assertNull(unitOfWork.executeRetriable(Account.class, ids, _ -> null));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
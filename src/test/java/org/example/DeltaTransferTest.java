@@ -0,0 +1,157 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "transfers.balance-update-mode=delta")
+@ActiveProfiles("test")
+@Testcontainers
+class DeltaTransferTest {
+
+    private static final int THREADS_NUM = 20;
+    private static final int NUMBER_OF_CUSTOMERS = 50;
+    private static final int NUMBER_OF_TRANSFERS = 2_000;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private UnitOfWork unitOfWork;
+
+    @Autowired
+    private StripingService stripingService;
+
+    private RetryPolicy defaultRetryPolicy;
+    private final LongAdder conflicts = new LongAdder();
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @BeforeEach
+    void countConflicts() {
+        defaultRetryPolicy = unitOfWork.getRetryPolicy();
+        unitOfWork.setRetryPolicy(defaultRetryPolicy.withListener(new RetryListener() {
+            @Override
+            public void onConflict(int attempt, OptimisticLockException exception, Duration backoff) {
+                conflicts.increment();
+            }
+        }));
+    }
+
+    @AfterEach
+    void restoreRetryPolicy() {
+        unitOfWork.setRetryPolicy(defaultRetryPolicy);
+    }
+
+    @Test
+    void transfersToHotAccount_shouldCommitWithoutConflicts() {
+        var merchant = createAccount(0L);
+        var customers = new ArrayList<UUID>();
+        for (int i = 0; i < NUMBER_OF_CUSTOMERS; i++) {
+            customers.add(createAccount(INITIAL_BALANCE));
+        }
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var customer = customers.get(i % NUMBER_OF_CUSTOMERS);
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(customer, merchant, 7L), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertEquals(0, conflicts.sum(), "Delta transfers should never conflict");
+        assertEquals(7L * NUMBER_OF_TRANSFERS, accountRepository.findById(merchant).balance());
+        var totalBalance = accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+        assertEquals(INITIAL_BALANCE * NUMBER_OF_CUSTOMERS, totalBalance, "Total balance should remain the same.");
+    }
+
+    @Test
+    void transfersToStripedAccount_shouldSpreadAcrossStripesAndKeepTotal() {
+        var merchant = createAccount(1_000L);
+        stripingService.restripe(merchant, 4);
+        var customers = new ArrayList<UUID>();
+        for (int i = 0; i < NUMBER_OF_CUSTOMERS; i++) {
+            customers.add(createAccount(INITIAL_BALANCE));
+        }
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var customer = customers.get(i % NUMBER_OF_CUSTOMERS);
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(customer, merchant, 7L), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertEquals(1_000L + 7L * NUMBER_OF_TRANSFERS, accountRepository.findById(merchant).balance());
+
+        stripingService.restripe(merchant, 0);
+        assertEquals(1_000L + 7L * NUMBER_OF_TRANSFERS, accountRepository.findById(merchant).balance());
+        assertThrows(InsufficientFundsException.class,
+            () -> transferService.createTransfer(merchant, customers.getFirst(), 1_000L + 7L * NUMBER_OF_TRANSFERS + 1));
+    }
+
+    @Test
+    void transferFromStripedAccount_exceedingEveryStripe_shouldSpanStripes() {
+        var merchant = createAccount(1_000L);
+        stripingService.restripe(merchant, 4);
+        var customer = createAccount(0L);
+
+        // Each of the 4 stripes holds 250
+        transferService.createTransfer(merchant, customer, 900L);
+
+        assertEquals(100L, accountRepository.findById(merchant).balance());
+        assertEquals(900L, accountRepository.findById(customer).balance());
+        assertThrows(InsufficientFundsException.class, () -> transferService.createTransfer(merchant, customer, 101L));
+        assertEquals(100L, accountRepository.findById(merchant).balance());
+
+        transferService.createTransfer(merchant, customer, 100L);
+        assertEquals(0L, accountRepository.findById(merchant).balance());
+    }
+
+    @Test
+    void transferExceedingBalance_shouldBeRejected() {
+        var from = createAccount(100L);
+        var to = createAccount(0L);
+
+        assertThrows(InsufficientFundsException.class, () -> transferService.createTransfer(from, to, 101L));
+
+        assertEquals(100L, accountRepository.findById(from).balance());
+        assertEquals(0L, accountRepository.findById(to).balance());
+        assertEquals(0, dsl.fetchCount(TRANSFER), "Rejected transfer should not be recorded");
+    }
+
+    private UUID createAccount(long balance) {
+        return accountRepository.save(new Account(UUID.randomUUID(), balance, 0L)).id();
+    }
+}
@@ -0,0 +1,82 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "unit-of-work.group-commit.enabled=true")
+@ActiveProfiles("test")
+@Testcontainers
+class GroupCommitTest {
+
+    private static final int THREADS_NUM = 16;
+    private static final int NUMBER_OF_ACCOUNTS = 10;
+    private static final int NUMBER_OF_TRANSFERS = 2_000;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void concurrentTransfers_shouldCommitInGroupsAndMaintainBalanceConservation() {
+        var accounts = new ArrayList<UUID>();
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accounts.add(accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L)).id());
+        }
+
+        var groupSize = meterRegistry.summary("unitofwork.group.size");
+        long groupsBefore = groupSize.count();
+        double batchesBefore = groupSize.totalAmount();
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var from = accounts.get(i % NUMBER_OF_ACCOUNTS);
+                var to = accounts.get((i + 1) % NUMBER_OF_ACCOUNTS);
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(from, to, 10L), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        var totalBalance = accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+        assertEquals(INITIAL_BALANCE * NUMBER_OF_ACCOUNTS, totalBalance, "Total balance should remain the same.");
+        assertEquals(NUMBER_OF_TRANSFERS, dsl.fetchCount(TRANSFER), "All executed transfers should be present");
+
+        // Every attempt that reached the committer went into some group, so fewer groups than batches means merging
+        long groups = groupSize.count() - groupsBefore;
+        double batches = groupSize.totalAmount() - batchesBefore;
+        assertTrue(batches >= NUMBER_OF_TRANSFERS, "Every transfer should have been committed in a group");
+        assertTrue(groups < batches, "Batches should share transactions, but " + groups + " groups took " + batches);
+    }
+}
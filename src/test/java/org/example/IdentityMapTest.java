@@ -0,0 +1,99 @@
+package org.example;
+
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdentityMapTest {
+
+    private final Account first = new Account(UUID.randomUUID(), 100L, 0L);
+    private final Account second = new Account(UUID.randomUUID(), 200L, 0L);
+    private final Map<UUID, Account> rows = Map.of(first.id(), first, second.id(), second);
+    // Ids of every multi-get issued, one list per query
+    private final List<List<UUID>> queries = new ArrayList<>();
+    private final IdentityMap identityMap = new IdentityMap(registry());
+
+    @Test
+    void find_ofAnAccountReadBefore_shouldNotQueryAgain() {
+        identityMap.find(Account.class, first.id());
+        var found = identityMap.find(Account.class, first.id());
+
+        assertEquals(first, found);
+        assertEquals(List.of(List.of(first.id())), queries);
+    }
+
+    @Test
+    void findAll_shouldLoadOnlyTheMissingAccountsWithOneQuery() {
+        identityMap.find(Account.class, first.id());
+
+        var found = identityMap.findAll(Account.class, List.of(second.id(), first.id()));
+
+        assertEquals(List.of(second, first), List.copyOf(found.values()));
+        assertEquals(List.of(List.of(first.id()), List.of(second.id())), queries);
+    }
+
+    @Test
+    void evict_afterAConflict_shouldReReadOnlyTheConflictingAccounts() {
+        identityMap.findAll(Account.class, List.of(first.id(), second.id()));
+
+        identityMap.evict(new OptimisticLockException("Version conflict", Set.of(second.id())));
+        identityMap.findAll(Account.class, List.of(first.id(), second.id()));
+
+        assertEquals(List.of(List.of(first.id(), second.id()), List.of(second.id())), queries);
+    }
+
+    @Test
+    void evict_withUnknownConflictingIds_shouldReReadEverything() {
+        identityMap.findAll(Account.class, List.of(first.id(), second.id()));
+
+        identityMap.evict(new OptimisticLockException("Version conflict"));
+        identityMap.findAll(Account.class, List.of(first.id(), second.id()));
+
+        assertEquals(List.of(List.of(first.id(), second.id()), List.of(first.id(), second.id())), queries);
+    }
+
+    /**
+     * A registry whose account reads are served from {@link #rows} and recorded in {@link #queries}.
+     */
+    private RepositoryRegistry registry() {
+        var dsl = DSL.using(SQLDialect.POSTGRES);
+        var transferProperties = new TransferProperties(
+            TransferProperties.BalanceUpdateMode.VERSIONED,
+            new TransferProperties.Bulk(1_000, 5_000),
+            new TransferProperties.Partitions(3),
+            new TransferProperties.Ledger(Duration.ofSeconds(1)),
+            new TransferProperties.Idempotency(1_000, Duration.ofHours(24), Duration.ofHours(1))
+        );
+        var accountCache = new AccountCache(
+            new AccountProperties(new AccountProperties.Cache(false, 1, Duration.ofSeconds(5))),
+            transferProperties,
+            new ReplicaProperties(
+                false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(1), ReplicaProperties.LagFallback.PRIMARY
+            )
+        );
+        var accountRepository = new AccountRepository(dsl, accountCache, transferProperties) {
+            @Override
+            public List<Account> findByIds(Collection<UUID> ids) {
+                queries.add(List.copyOf(ids));
+                return ids.stream().map(rows::get).toList();
+            }
+        };
+        return new RepositoryRegistry(
+            accountRepository,
+            new TransferRepository(dsl),
+            new LedgerRepository(dsl),
+            new IdempotencyKeyRepository(dsl),
+            transferProperties
+        );
+    }
+}
@@ -0,0 +1,150 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.LEDGER_ENTRY;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+    "transfers.balance-update-mode=ledger",
+    // Compaction is driven by the tests
+    "transfers.ledger.compaction-interval=1h"
+})
+@ActiveProfiles("test")
+@Testcontainers
+class LedgerTransferTest {
+
+    private static final int THREADS_NUM = 20;
+    private static final int NUMBER_OF_CUSTOMERS = 50;
+    private static final int NUMBER_OF_TRANSFERS = 2_000;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private LedgerCompactor ledgerCompactor;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void transfersToHotAccount_shouldOnlyAppendEntriesAndSurviveCompaction() throws InterruptedException {
+        var merchant = createAccount(0L);
+        var customers = new ArrayList<UUID>();
+        for (int i = 0; i < NUMBER_OF_CUSTOMERS; i++) {
+            customers.add(createAccount(INITIAL_BALANCE));
+        }
+
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var customer = customers.get(i % NUMBER_OF_CUSTOMERS);
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(customer, merchant, 7L), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        // Account rows are untouched until compaction, yet reads include every entry
+        assertEquals(0L, snapshotOf(merchant));
+        assertEquals(7L * NUMBER_OF_TRANSFERS, balanceOf(merchant));
+
+        compactUntilFolded(merchant, 7L * NUMBER_OF_TRANSFERS);
+        assertEquals(7L * NUMBER_OF_TRANSFERS, balanceOf(merchant));
+        var totalBalance = accountRepository.findAll().stream().mapToLong(Account::balance).sum();
+        assertEquals(INITIAL_BALANCE * NUMBER_OF_CUSTOMERS, totalBalance, "Total balance should remain the same.");
+        assertEquals(2 * NUMBER_OF_TRANSFERS, dsl.fetchCount(LEDGER_ENTRY));
+    }
+
+    @Test
+    void concurrentDebits_shouldNeverOverdraw() {
+        var from = createAccount(100L);
+        var to = createAccount(0L);
+
+        int created = 0;
+        int rejected = 0;
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(from, to, 7L), executor));
+                if (i == 25) {
+                    // A compaction in the middle must not change what the guard sees
+                    ledgerCompactor.compact();
+                }
+            }
+            for (var future : futures) {
+                try {
+                    future.join();
+                    created++;
+                } catch (CompletionException e) {
+                    assertInstanceOf(InsufficientFundsException.class, e.getCause());
+                    rejected++;
+                }
+            }
+        }
+
+        assertEquals(14, created);
+        assertEquals(36, rejected);
+        assertEquals(2L, balanceOf(from));
+        assertEquals(98L, balanceOf(to));
+    }
+
+    @Test
+    void versionedUpdate_shouldBeRejected() {
+        var account = accountRepository.findById(createAccount(100L));
+
+        assertThrows(IllegalStateException.class, () -> accountRepository.update(account.withBalance(50L)));
+    }
+
+    // Bypasses the account cache
+    private long balanceOf(UUID id) {
+        return accountRepository.findPage(null, Integer.MAX_VALUE).stream()
+            .filter(account -> account.id().equals(id))
+            .findFirst()
+            .orElseThrow()
+            .balance();
+    }
+
+    // Transactions still running elsewhere, like the change feed sequencer, can hold the horizon back for a moment
+    private void compactUntilFolded(UUID id, long expectedSnapshot) throws InterruptedException {
+        for (int pass = 0; pass < 50 && snapshotOf(id) != expectedSnapshot; pass++) {
+            ledgerCompactor.compact();
+            Thread.sleep(10);
+        }
+        assertEquals(expectedSnapshot, snapshotOf(id));
+    }
+
+    private long snapshotOf(UUID id) {
+        return dsl.select(ACCOUNT.BALANCE).from(ACCOUNT).where(ACCOUNT.ID.eq(id)).fetchSingle().value1();
+    }
+
+    private UUID createAccount(long balance) {
+        return accountRepository.save(new Account(UUID.randomUUID(), balance, 0L)).id();
+    }
+}
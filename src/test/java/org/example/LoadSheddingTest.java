@@ -0,0 +1,160 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        // A fixed limit, so that the test knows when it is reached
+        "unit-of-work.limiter.enabled=true",
+        "unit-of-work.limiter.initial-limit=4",
+        "unit-of-work.limiter.min-limit=4",
+        "unit-of-work.limiter.max-limit=4"
+    }
+)
+@ActiveProfiles("test")
+@Testcontainers
+class LoadSheddingTest {
+
+    private static final int LIMIT = 4;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private UnitOfWork unitOfWork;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+    }
+
+    @Test
+    void createTransfer_withSpentOrInvalidDeadline_shouldFailWithoutWriting() {
+        var testHelper = new TestHelper(restTemplate);
+        var from = testHelper.createAccount(100L);
+        var to = testHelper.createAccount(0L);
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, postTransfer(from, to, "0ms"));
+        assertEquals(HttpStatus.BAD_REQUEST, postTransfer(from, to, "soon"));
+        assertEquals(0, dsl.fetchCount(TRANSFER));
+
+        assertEquals(HttpStatus.CREATED, postTransfer(from, to, "10s"));
+        assertEquals(1, dsl.fetchCount(TRANSFER));
+    }
+
+    @Test
+    void createTransfersInChunks_withSpentDeadline_shouldFailEveryChunk() {
+        var testHelper = new TestHelper(restTemplate);
+        var from = testHelper.createAccount(100L);
+        var to = testHelper.createAccount(0L);
+        var headers = new HttpHeaders();
+        headers.set("Request-Timeout", "0ms");
+        var items = List.of(transferItem(from, to), transferItem(from, to));
+
+        // Chunks are committed on the thread writing the response, which must still see the deadline
+        var response = restTemplate.postForEntity(
+            "/transfers/batch?atomicity=CHUNK", new HttpEntity<>(items, headers), String.class
+        );
+
+        assertEquals(HttpStatus.OK, HttpStatus.valueOf(response.getStatusCode().value()));
+        assertEquals(2, response.getBody().lines().filter(line -> line.contains("\"FAILED\"")).count());
+        assertEquals(0, dsl.fetchCount(TRANSFER));
+    }
+
+    @Test
+    void executeRetriable_shouldStopRetryingAtTheDeadline() {
+        var policy = RetryPolicy.immediate(1_000_000).withBackoff(Duration.ofMillis(5), Duration.ofMillis(5));
+
+        long start = System.nanoTime();
+        try (var _ = RequestDeadline.enter(RequestDeadline.after(Duration.ofMillis(200)))) {
+            var e = assertThrows(DeadlineExceededException.class, () -> unitOfWork.executeRetriable(policy, _ -> {
+                throw new OptimisticLockException("Always conflicting");
+            }));
+            assertInstanceOf(OptimisticLockException.class, e.getCause());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 1_000, "Retries should stop at the deadline, took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void executeRetriable_beyondTheLimit_shouldBeRejectedRightAway() throws InterruptedException {
+        var started = new CountDownLatch(LIMIT);
+        var release = new CountDownLatch(1);
+        try (var executor = Executors.newFixedThreadPool(LIMIT)) {
+            List<CompletableFuture<Object>> holders = new ArrayList<>();
+            for (int i = 0; i < LIMIT; i++) {
+                holders.add(CompletableFuture.supplyAsync(() -> unitOfWork.executeRetriable(_ -> {
+                    started.countDown();
+                    awaitUninterruptibly(release);
+                    return null;
+                }), executor));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertThrows(OverloadedException.class, () -> unitOfWork.executeRetriable(_ -> null));
+
+            release.countDown();
+            CompletableFuture.allOf(holders.toArray(CompletableFuture[]::new)).join();
+        }
+        // Permits are given back
+        assertNull(unitOfWork.executeRetriable(_ -> null));
+    }
+
+    private HttpStatus postTransfer(Account from, Account to, String timeout) {
+        var headers = new HttpHeaders();
+        headers.set("Request-Timeout", timeout);
+        var response = restTemplate.postForEntity(
+            "/transfers", new HttpEntity<>(transferItem(from, to), headers), String.class
+        );
+        return HttpStatus.valueOf(response.getStatusCode().value());
+    }
+
+    private static Map<String, Object> transferItem(Account from, Account to) {
+        return Map.of(
+            "fromAccountId", from.id().toString(),
+            "toAccountId", to.id().toString(),
+            "amount", 10L
+        );
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.example.jooq.Tables.ACCOUNT;
+import static org.example.jooq.Tables.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "reconciliation.ranges=16")
+@ActiveProfiles("test")
+@Testcontainers
+class ReconciliationTest {
+
+    private static final int THREADS_NUM = 8;
+    private static final int NUMBER_OF_ACCOUNTS = 200;
+    private static final int NUMBER_OF_TRANSFERS = 1_000;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private ChangeFeedRepository changeFeedRepository;
+
+    @Autowired
+    private Reconciliation reconciliation;
+
+    @BeforeEach
+    void cleanDatabase() {
+        dsl.truncate(TRANSFER).cascade().execute();
+        dsl.truncate(ACCOUNT).cascade().execute();
+        changeFeed.unregister(Reconciliation.CHECKPOINT_CONSUMER);
+    }
+
+    @Test
+    void fullRun_whileTransfersGoOn_shouldReconcileEveryAccount() {
+        var accounts = createAccounts();
+
+        ReconciliationReport report;
+        try (var executor = Executors.newFixedThreadPool(THREADS_NUM)) {
+            List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+                var from = accounts.get(i % NUMBER_OF_ACCOUNTS);
+                var to = accounts.get((i * 7 + 1) % NUMBER_OF_ACCOUNTS);
+                futures.add(CompletableFuture.supplyAsync(() -> transferService.createTransfer(from, to, 10L), executor));
+            }
+            // Ranges are scanned at different moments, but all of them read the same snapshot
+            report = reconciliation.run(false);
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertFalse(report.incremental());
+        assertEquals(NUMBER_OF_ACCOUNTS, report.accountsChecked());
+        assertEquals(INITIAL_BALANCE * NUMBER_OF_ACCOUNTS, report.totalBalance());
+        assertTrue(report.isBalanced(), () -> "Unexpected mismatches: " + report.mismatches());
+    }
+
+    @Test
+    void fullRun_shouldReportBalanceChangedOutsideOfTransfers() {
+        var accounts = createAccounts();
+        var tampered = accounts.getFirst();
+        dsl.update(ACCOUNT).set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(1)).where(ACCOUNT.ID.eq(tampered)).execute();
+
+        var report = reconciliation.run(false);
+
+        assertFalse(report.isBalanced());
+        assertEquals(1, report.mismatchCount());
+        assertEquals(
+            List.of(new ReconciliationReport.Mismatch(tampered, INITIAL_BALANCE + 1, INITIAL_BALANCE)),
+            report.mismatches()
+        );
+        assertEquals(report.totalOpeningBalance() + 1, report.totalBalance());
+        assertNull(changeFeedRepository.findAcknowledged(Reconciliation.CHECKPOINT_CONSUMER));
+    }
+
+    @Test
+    void incrementalRun_shouldOnlyCheckAccountsChangedSinceTheLastRun() throws InterruptedException {
+        var accounts = createAccounts();
+        var first = reconciliation.run(true);
+        assertFalse(first.incremental(), "Without a checkpoint, the first run checks everything");
+
+        transferService.createTransfer(accounts.get(0), accounts.get(1), 25L);
+        awaitSequenced(accounts.get(0), first.checkpoint());
+        var second = reconciliation.run(true);
+
+        assertTrue(second.incremental());
+        assertEquals(2, second.accountsChecked());
+        assertNull(second.totalBalance());
+        assertTrue(second.isBalanced());
+        assertEquals(second.checkpoint(), changeFeedRepository.findAcknowledged(Reconciliation.CHECKPOINT_CONSUMER));
+    }
+
+    // Transactions still running elsewhere can hold numbering back for a moment
+    private void awaitSequenced(UUID accountId, long after) throws InterruptedException {
+        for (int pass = 0; pass < 50 && !hasEventAfter(accountId, after); pass++) {
+            changeFeed.sequence();
+            Thread.sleep(10);
+        }
+        assertTrue(hasEventAfter(accountId, after));
+    }
+
+    private boolean hasEventAfter(UUID accountId, long after) {
+        return changeFeedRepository.findAfter(after, 10_000).stream()
+            .anyMatch(event -> event.entityId().equals(accountId));
+    }
+
+    private List<UUID> createAccounts() {
+        var accounts = new ArrayList<UUID>();
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accounts.add(accountRepository.save(new Account(UUID.randomUUID(), INITIAL_BALANCE, 0L)).id());
+        }
+        return accounts;
+    }
+}
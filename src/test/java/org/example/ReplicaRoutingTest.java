@@ -0,0 +1,59 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// A separate database stands in for the replica, so the tests can tell where each read went
+@SpringBootTest(properties = {
+    "replicas.enabled=true",
+    "replicas.urls=jdbc:tc:postgresql:16:///replicadb"
+})
+@ActiveProfiles("test")
+@Testcontainers
+class ReplicaRoutingTest {
+
+    @Autowired
+    private DSLContext dsl;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UnitOfWork unitOfWork;
+
+    @Test
+    void readsFromReplica_shouldUseReplicaOnlyInsideTheScope() {
+        assertEquals("testdb", currentDatabase());
+        assertEquals("replicadb", ReplicaRoutingDataSource.readFromReplica(this::currentDatabase));
+        assertEquals("testdb", transactionTemplate.execute(_ -> currentDatabase()));
+    }
+
+    @Test
+    void retryAfterConflict_shouldReadFromPrimary() {
+        List<String> databases = new ArrayList<>();
+
+        unitOfWork.executeRetriable(_ -> {
+            databases.add(currentDatabase());
+            if (databases.size() == 1) {
+                throw new OptimisticLockException("Stale read from the replica");
+            }
+            return null;
+        });
+
+        assertEquals(List.of("replicadb", "testdb"), databases);
+    }
+
+    private String currentDatabase() {
+        return (String) dsl.fetchValue("SELECT current_database()");
+    }
+}
@@ -0,0 +1,46 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    private static final Duration BASE_DELAY = Duration.ofMillis(2);
+    private static final Duration MAX_DELAY = Duration.ofMillis(100);
+
+    @Test
+    void nextDelay_shouldStayBetweenBaseDelayAndCap() {
+        var policy = RetryPolicy.immediate(10).withBackoff(BASE_DELAY, MAX_DELAY);
+
+        var delay = Duration.ZERO;
+        for (int i = 0; i < 1_000; i++) {
+            delay = policy.nextDelay(delay);
+            assertTrue(delay.compareTo(BASE_DELAY) >= 0, "Delay should not be shorter than the base delay");
+            assertTrue(delay.compareTo(MAX_DELAY) <= 0, "Delay should not exceed the cap");
+        }
+    }
+
+    @Test
+    void nextDelay_withZeroBaseDelay_shouldStillBackOff() {
+        var policy = RetryPolicy.immediate(10).withBackoff(Duration.ZERO, MAX_DELAY);
+
+        var delay = Duration.ZERO;
+        for (int i = 0; i < 100; i++) {
+            delay = policy.nextDelay(delay);
+            assertTrue(delay.compareTo(RetryPolicy.MIN_BASE_DELAY) >= 0, "Delay should not drop below the minimum");
+            assertTrue(delay.compareTo(MAX_DELAY) <= 0, "Delay should not exceed the cap");
+        }
+    }
+
+    @Test
+    void nextDelay_shouldBeZeroForImmediatePolicy() {
+        var policy = RetryPolicy.immediate(10);
+
+        assertEquals(Duration.ZERO, policy.nextDelay(Duration.ZERO));
+        assertEquals(Duration.ZERO, policy.nextDelay(Duration.ofSeconds(1)));
+    }
+}
@@ -1,9 +1,16 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 
 import java.util.List;
 import java.util.Map;
@@ -14,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TestHelper {
 
     private final TestRestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public TestHelper(TestRestTemplate restTemplate) {
         this.restTemplate = restTemplate;
@@ -28,13 +36,37 @@ public class TestHelper {
     }
 
     public Transfer createTransfer(UUID fromAccountId, UUID toAccountId, long amount) {
+        return createTransfer("/transfers", fromAccountId, toAccountId, amount);
+    }
+
+    public Transfer createTransferAsync(UUID fromAccountId, UUID toAccountId, long amount) {
+        return createTransfer("/transfers/async", fromAccountId, toAccountId, amount);
+    }
+
+    public ResponseEntity<Transfer> createTransfer(
+        String idempotencyKey,
+        UUID fromAccountId,
+        UUID toAccountId,
+        long amount
+    ) {
         Map<String, Object> request = Map.of(
             "fromAccountId", fromAccountId.toString(),
             "toAccountId", toAccountId.toString(),
             "amount", amount
         );
+        var headers = new HttpHeaders();
+        headers.set("Idempotency-Key", idempotencyKey);
+        return restTemplate.postForEntity("/transfers", new HttpEntity<>(request, headers), Transfer.class);
+    }
 
-        var response = restTemplate.postForEntity("/transfers", request, Transfer.class);
+    private Transfer createTransfer(String path, UUID fromAccountId, UUID toAccountId, long amount) {
+        Map<String, Object> request = Map.of(
+            "fromAccountId", fromAccountId.toString(),
+            "toAccountId", toAccountId.toString(),
+            "amount", amount
+        );
+
+        var response = restTemplate.postForEntity(path, request, Transfer.class);
 
         if (response.getStatusCode() != HttpStatus.CREATED) {
             throw new RuntimeException("Failed to create transfer: " + response.getStatusCode());
@@ -44,6 +76,23 @@ public class TestHelper {
         return response.getBody();
     }
 
+    public List<BulkTransferService.ItemResult> createTransfers(List<Map<String, Object>> items, String atomicity) {
+        var response = restTemplate.postForEntity("/transfers/batch?atomicity={atomicity}", items, String.class, atomicity);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody().lines()
+            .filter(line -> !line.isBlank())
+            .map(line -> {
+                try {
+                    return objectMapper.readValue(line, BulkTransferService.ItemResult.class);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException(e);
+                }
+            })
+            .toList();
+    }
+
     public List<Account> getAllAccounts() {
         var response = restTemplate.exchange(
             "/accounts",
@@ -71,5 +120,64 @@ public class TestHelper {
         assertNotNull(response.getBody());
         return response.getBody();
     }
-}
 
+    public AccountController.StatementPage getStatement(UUID accountId, String after, int limit) {
+        var response = restTemplate.getForEntity(
+            after == null ? "/accounts/{id}/transfers?limit={limit}" : "/accounts/{id}/transfers?limit={limit}&after={after}",
+            AccountController.StatementPage.class,
+            accountId,
+            limit,
+            after
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+
+    /**
+     * Returns the change batch as a JSON tree, since event data is embedded as raw JSON.
+     */
+    public JsonNode getChanges(long after, int waitSeconds) {
+        var response = restTemplate.getForEntity(
+            "/changes?after={after}&wait={wait}",
+            JsonNode.class,
+            after,
+            waitSeconds
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+
+    public List<Account> getAccountsPage(UUID after, int limit) {
+        var response = restTemplate.exchange(
+            after == null ? "/accounts?limit={limit}" : "/accounts?limit={limit}&after={after}",
+            HttpMethod.GET,
+            null,
+            new ParameterizedTypeReference<List<Account>>() {
+            },
+            limit,
+            after
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+
+    public ResponseEntity<String> importCsv(String path, String csv) {
+        var headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("text/csv"));
+        return restTemplate.postForEntity(path, new HttpEntity<>(csv, headers), String.class);
+    }
+
+    public String exportCsv(String path) {
+        var response = restTemplate.getForEntity(path, String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+}